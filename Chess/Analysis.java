@@ -0,0 +1,109 @@
+import java.awt.Dimension;
+import java.awt.Font;
+import javax.swing.JComponent;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
+import javax.swing.Timer;
+
+// Continuous analysis for the side panel: the position on the board is searched without a limit, reporting
+// its best lines after every iteration, until the position changes. Moving on stops the running search,
+// which notices within a thousand nodes, and the new one starts on the same engine threads as soon as it
+// has. Lines are turned into text on the engine thread and picked up by a Swing timer a few times a second,
+// so however fast iterations finish the EDT only ever does one setText per tick.
+final class Analysis {
+    static final int REFRESH_MILLIS = 250;
+
+    private final Engine engine = new Engine();
+    private final JTextArea text = new JTextArea();
+    private final JScrollPane component = new JScrollPane(text);
+    // Bumped on every new position; lines from searches of an older one are dropped. Guarded by this together
+    // with latest, so a late search cannot overwrite the text of a newer position.
+    private volatile int generation;
+    private volatile String latest = "";
+    private String shown = "";
+
+    Analysis(int lines) {
+        engine.setUseBook(false);
+        engine.setMultiPv(lines);
+        text.setEditable(false);
+        text.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        component.setPreferredSize(new Dimension(360, 0));
+        new Timer(REFRESH_MILLIS, e -> refresh()).start();
+    }
+
+    JComponent component() {
+        return component;
+    }
+
+    // Starts analysing position, dropping whatever was being analysed before.
+    void analyze(Position position) {
+        int current;
+        synchronized (this) {
+            current = ++generation;
+            latest = "";
+        }
+        engine.stop();
+        if (!MoveGen.hasLegalMove(position)) {
+            return;
+        }
+        Position root = position.copy();
+        engine.think(position, Search.Limits.depth(Search.MAX_PLY - 1), new Search.Listener() {
+            public void iterationFinished(int depth, int score, long elapsedMillis, int[] pv) {
+            }
+
+            public void linesFinished(int depth, int[] scores, int[][] pvs, long elapsedMillis) {
+                if (generation == current) {
+                    publish(current, describe(root, depth, scores, pvs, engine.nodes(), elapsedMillis));
+                }
+            }
+        }, result -> {
+            // A tablebase answer comes without iterations.
+            if (result.depth == 0 && result.bestMove != Move.NONE && latest.isEmpty()) {
+                publish(current, describe(root, 0, new int[] {result.score}, new int[][] {result.pv}, 0, 0));
+            }
+        });
+    }
+
+    // Stops analysing, e.g. while the engine thinks about its own move.
+    void stop() {
+        synchronized (this) {
+            generation++;
+            latest = "";
+        }
+        engine.stop();
+    }
+
+    private synchronized void publish(int current, String lines) {
+        if (generation == current) {
+            latest = lines;
+        }
+    }
+
+    private void refresh() {
+        String lines = latest;
+        if (lines != shown) {
+            shown = lines;
+            text.setText(lines);
+            text.setCaretPosition(0);
+        }
+    }
+
+    private static String describe(Position root, int depth, int[] scores, int[][] pvs, long nodes, long elapsedMillis) {
+        StringBuilder lines = new StringBuilder(256);
+        lines.append(String.format("depth %d  %d kN  %.1f s%n", depth, nodes / 1000, elapsedMillis / 1000.0));
+        for (int k = 0; k < scores.length; k++) {
+            lines.append(String.format("%6s  %s%n", scoreText(root, scores[k]), San.formatLine(root, pvs[k])));
+        }
+        return lines.toString();
+    }
+
+    // From White's point of view: pawns, or #n / #-n for a mate in n moves.
+    private static String scoreText(Position root, int score) {
+        int white = root.sideToMove == Position.WHITE ? score : -score;
+        if (Math.abs(white) >= Search.MATE_BOUND) {
+            int moves = (Search.MATE - Math.abs(white) + 1) / 2;
+            return (white > 0 ? "#" : "#-") + moves;
+        }
+        return String.format("%+.2f", white / 100.0);
+    }
+}
@@ -0,0 +1,146 @@
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.GridLayout;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import javax.swing.BorderFactory;
+import javax.swing.Icon;
+import javax.swing.JButton;
+import javax.swing.JPanel;
+
+// Board rendering cost while moves stream in as fast as an engine can play them: the 64-button grid (every
+// icon and border reset, then the whole grid painted) against BoardView (only the dirty squares painted).
+// Both render into an off-screen image, so it also runs headless.
+//   java BoardBench [moves] [squareSize]
+final class BoardBench {
+    private static final Color LIGHT = Chess.LIGHT_SQUARE;
+    private static final Color DARK = Chess.DARK_SQUARE;
+
+    public static void main(String[] args) throws IOException {
+        int moves = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : BoardView.DEFAULT_SQUARE_SIZE;
+        int[] line = randomGames(moves, 42);
+        PieceSprites.await();
+
+        BufferedImage frame = new BufferedImage(8 * size, 8 * size, BufferedImage.TYPE_INT_RGB);
+        report("buttons", runGrid(line, size, frame));
+        report("component", runComponent(line, size, frame));
+    }
+
+    // Moves of back-to-back random games; Move.NONE marks a restart from the initial position.
+    private static int[] randomGames(int count, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        Position position = new Position();
+        position.setFen(Position.START_FEN);
+        int[] legal = new int[MoveGen.MAX_MOVES];
+        int[] line = new int[count];
+        for (int k = 0; k < count; k++) {
+            int n = MoveGen.generate(position, legal, 0);
+            if (n == 0 || position.halfmoveClock >= 100) {
+                line[k] = Move.NONE;
+                position.setFen(Position.START_FEN);
+            } else {
+                line[k] = legal[random.nextInt(n)];
+                position.makeMove(line[k]);
+            }
+        }
+        return line;
+    }
+
+    // Returns per-move frame times in nanoseconds, followed by the total number of squares repainted.
+    private static long[] runGrid(int[] line, int size, BufferedImage frame) {
+        Icon[] icons = new Icon[12];
+        for (int piece = 0; piece < 12; piece++) {
+            icons[piece] = PieceSprites.icon(piece, size);
+        }
+        JPanel panel = new JPanel(new GridLayout(8, 8));
+        JButton[][] squares = new JButton[8][8];
+        for (int i = 0; i < 8; i++) {
+            for (int j = 0; j < 8; j++) {
+                squares[i][j] = new JButton();
+                squares[i][j].setBackground((i + j) % 2 == 0 ? LIGHT : DARK);
+                squares[i][j].setPreferredSize(new Dimension(size, size));
+                panel.add(squares[i][j]);
+            }
+        }
+        panel.setSize(8 * size, 8 * size);
+        panel.doLayout();
+
+        Game game = new Game();
+        long[] times = new long[line.length + 1];
+        Graphics2D g = frame.createGraphics();
+        for (int k = 0; k < line.length; k++) {
+            long start = System.nanoTime();
+            play(game, line[k]);
+            for (int i = 0; i < 8; i++) {
+                for (int j = 0; j < 8; j++) {
+                    int piece = game.position().pieceAt(i, j);
+                    squares[i][j].setIcon(piece == Position.NO_PIECE ? null : icons[piece]);
+                    squares[i][j].setBorder(BorderFactory.createEmptyBorder());
+                }
+            }
+            panel.validate();
+            panel.paint(g);
+            times[k] = System.nanoTime() - start;
+            times[line.length] += 64;
+        }
+        g.dispose();
+        return times;
+    }
+
+    private static long[] runComponent(int[] line, int size, BufferedImage frame) {
+        Game game = new Game();
+        BoardView view = new BoardView(game, LIGHT, DARK);
+        view.setSize(8 * size, 8 * size);
+        Graphics2D g = frame.createGraphics();
+        view.paint(g);
+        view.sync();
+        long painted = view.paintedSquares();
+        long[] times = new long[line.length + 1];
+        for (int k = 0; k < line.length; k++) {
+            long start = System.nanoTime();
+            play(game, line[k]);
+            long dirty = view.sync();
+            // What the repaint manager would do with the requested rectangles: paint each under its clip.
+            for (long bits = dirty; bits != 0; bits &= bits - 1) {
+                Rectangle bounds = view.squareBounds(Long.numberOfTrailingZeros(bits));
+                Graphics2D clipped = (Graphics2D) g.create(bounds.x, bounds.y, bounds.width, bounds.height);
+                clipped.translate(-bounds.x, -bounds.y);
+                view.paint(clipped);
+                clipped.dispose();
+            }
+            times[k] = System.nanoTime() - start;
+        }
+        times[line.length] = view.paintedSquares() - painted;
+        g.dispose();
+        return times;
+    }
+
+    private static void play(Game game, int move) {
+        if (move == Move.NONE) {
+            game.reset();
+        } else {
+            game.playMove(move);
+        }
+    }
+
+    private static void report(String name, long[] run) {
+        int n = run.length - 1;
+        long squares = run[n];
+        long[] times = Arrays.copyOf(run, n);
+        // The first tenth warms up the JIT and the sprite caches.
+        long[] measured = Arrays.copyOfRange(times, n / 10, n);
+        Arrays.sort(measured);
+        long total = 0;
+        for (long t : measured) {
+            total += t;
+        }
+        System.out.printf("%-10s %6d moves  frame us: mean %.1f  p50 %.1f  p99 %.1f  max %.1f  squares repainted/move %.1f%n",
+                name, n, total / 1e3 / measured.length, measured[measured.length / 2] / 1e3,
+                measured[(int) (measured.length * 0.99)] / 1e3, measured[measured.length - 1] / 1e3, (double) squares / n);
+    }
+}
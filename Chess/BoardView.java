@@ -0,0 +1,221 @@
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import javax.swing.JComponent;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+// The board as one component: squares are filled and pieces drawn from the PieceSprites atlas, and sync()
+// repaints only the squares whose piece, selection, move targets or outline changed since they were last shown.
+// An alternative to the 64-button grid (java Chess --board component).
+final class BoardView extends JComponent {
+    private static final long serialVersionUID = 1L;
+
+    static final int DEFAULT_SQUARE_SIZE = 60;
+
+    private static final int ANIMATION_MILLIS = 120;
+    private static final int FRAME_MILLIS = 15;
+    private static final Color TARGET_MARK = new Color(Chess.TARGET_COLOR.getRed(), Chess.TARGET_COLOR.getGreen(),
+            Chess.TARGET_COLOR.getBlue(), 170);
+
+    // Told about clicks as (row, col) in the same coordinates as the button grid.
+    interface SquareListener {
+        void squareClicked(int row, int col);
+    }
+
+    private final Game game;
+    private final Color colorLight;
+    private final Color colorDark;
+
+    // What the screen currently shows, so sync() can work out what changed.
+    private final int[] shown = new int[64];
+    private int shownSelection = -1;
+    private long shownTargets;
+    private long shownOutlines;
+    private long outlines;
+    private Color outlineColor = Color.GREEN;
+
+    private boolean animate;
+    private Timer animation;
+    private int animatedPiece = Position.NO_PIECE;
+    private int animatedFrom;
+    private int animatedTo;
+    private long animationStart;
+    private Rectangle animatedBounds;
+
+    private long paintedSquares;
+
+    BoardView(Game game, Color colorLight, Color colorDark) {
+        this.game = game;
+        this.colorLight = colorLight;
+        this.colorDark = colorDark;
+        java.util.Arrays.fill(shown, Position.NO_PIECE);
+        // Squares paint without pieces until the sprites have been decoded in the background.
+        PieceSprites.load().thenRun(() -> SwingUtilities.invokeLater(this::repaint));
+        setPreferredSize(new Dimension(8 * DEFAULT_SQUARE_SIZE, 8 * DEFAULT_SQUARE_SIZE));
+        setOpaque(true);
+    }
+
+    void setSquareListener(SquareListener listener) {
+        addMouseListener(new MouseAdapter() {
+            public void mousePressed(MouseEvent e) {
+                int size = squareSize();
+                int col = e.getX() / size;
+                int row = e.getY() / size;
+                if (e.getX() >= 0 && e.getY() >= 0 && row < 8 && col < 8) {
+                    listener.squareClicked(row, col);
+                }
+            }
+        });
+    }
+
+    void setAnimated(boolean animate) {
+        this.animate = animate;
+    }
+
+    int squareSize() {
+        return Math.max(1, Math.min(getWidth(), getHeight()) / 8);
+    }
+
+    // Squares outlined in the given color, e.g. a hint; cleared by passing 0. Returns the squares repainted.
+    long setOutlines(long squares, Color color) {
+        outlines = squares;
+        outlineColor = color;
+        return sync();
+    }
+
+    // Repaints the squares that differ from what is on screen and returns them as a mask.
+    long sync() {
+        Position position = game.position();
+        long dirty = 0L;
+        for (int sq = 0; sq < 64; sq++) {
+            int piece = position.pieceAt(sq);
+            if (shown[sq] != piece) {
+                shown[sq] = piece;
+                dirty |= 1L << sq;
+            }
+        }
+        int selection = game.selectedRow() < 0 ? -1 : Position.square(game.selectedRow(), game.selectedCol());
+        if (selection != shownSelection) {
+            if (shownSelection >= 0) {
+                dirty |= 1L << shownSelection;
+            }
+            if (selection >= 0) {
+                dirty |= 1L << selection;
+            }
+            shownSelection = selection;
+        }
+        long targets = game.legalTargets();
+        dirty |= shownTargets ^ targets;
+        shownTargets = targets;
+        dirty |= shownOutlines ^ outlines;
+        shownOutlines = outlines;
+        for (long bits = dirty; bits != 0; bits &= bits - 1) {
+            repaintSquare(Long.numberOfTrailingZeros(bits));
+        }
+        return dirty;
+    }
+
+    // As sync(), but slides the moved piece from its old square to the new one when animation is on.
+    void syncAfterMove(int move) {
+        if (!animate || move == Move.NONE || !isShowing()) {
+            setOutlines(0L, outlineColor);
+            return;
+        }
+        if (animation != null) {
+            animation.stop();
+        }
+        outlines = 0L;
+        animatedFrom = Move.from(move);
+        animatedTo = Move.to(move);
+        animatedPiece = game.position().pieceAt(animatedTo);
+        animationStart = System.nanoTime();
+        animatedBounds = squareBounds(animatedFrom);
+        sync();
+        animation = new Timer(FRAME_MILLIS, e -> stepAnimation());
+        animation.start();
+    }
+
+    private void stepAnimation() {
+        Rectangle previous = animatedBounds;
+        double t = Math.min(1.0, (System.nanoTime() - animationStart) / (ANIMATION_MILLIS * 1e6));
+        Rectangle from = squareBounds(animatedFrom);
+        Rectangle to = squareBounds(animatedTo);
+        animatedBounds = new Rectangle((int) (from.x + (to.x - from.x) * t), (int) (from.y + (to.y - from.y) * t),
+                from.width, from.height);
+        repaint(previous.union(animatedBounds));
+        if (t >= 1.0) {
+            animation.stop();
+            animatedPiece = Position.NO_PIECE;
+            repaintSquare(animatedTo);
+        }
+    }
+
+    private void repaintSquare(int sq) {
+        repaint(squareBounds(sq));
+    }
+
+    Rectangle squareBounds(int sq) {
+        int size = squareSize();
+        return new Rectangle(Position.col(sq) * size, Position.row(sq) * size, size, size);
+    }
+
+    // Squares painted so far, for comparing repaint work with the button grid.
+    long paintedSquares() {
+        return paintedSquares;
+    }
+
+    @Override
+    protected void paintComponent(Graphics graphics) {
+        Graphics2D g = (Graphics2D) graphics;
+        int size = squareSize();
+        PieceSprites sprites = PieceSprites.loaded();
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, 8 * size, 8 * size);
+        }
+        int firstRow = Math.max(0, clip.y / size);
+        int lastRow = Math.min(7, (clip.y + clip.height - 1) / size);
+        int firstCol = Math.max(0, clip.x / size);
+        int lastCol = Math.min(7, (clip.x + clip.width - 1) / size);
+        Position position = game.position();
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int col = firstCol; col <= lastCol; col++) {
+                int sq = Position.square(row, col);
+                int x = col * size;
+                int y = row * size;
+                g.setColor((row + col) % 2 == 0 ? colorLight : colorDark);
+                g.fillRect(x, y, size, size);
+                int piece = position.pieceAt(sq);
+                boolean sliding = animatedPiece != Position.NO_PIECE && sq == animatedTo;
+                if (piece != Position.NO_PIECE && !sliding && sprites != null) {
+                    sprites.draw(g, piece, x, y, size);
+                }
+                if ((shownTargets & 1L << sq) != 0) {
+                    g.setColor(TARGET_MARK);
+                    g.fillOval(x + size * 3 / 8, y + size * 3 / 8, size / 4, size / 4);
+                }
+                if (sq == shownSelection) {
+                    outline(g, x, y, size, Color.RED);
+                } else if ((shownOutlines & 1L << sq) != 0) {
+                    outline(g, x, y, size, outlineColor);
+                }
+                paintedSquares++;
+            }
+        }
+        if (animatedPiece != Position.NO_PIECE && sprites != null) {
+            sprites.draw(g, animatedPiece, animatedBounds.x, animatedBounds.y, size);
+        }
+    }
+
+    private static void outline(Graphics2D g, int x, int y, int size, Color color) {
+        g.setColor(color);
+        g.setStroke(new BasicStroke(3));
+        g.drawRect(x + 1, y + 1, size - 3, size - 3);
+    }
+}
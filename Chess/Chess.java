@@ -3,56 +3,106 @@ import java.awt.event.*;
 import javax.swing.*;
 
 public class Chess extends JFrame {
+    // Board styles: the original grid of buttons, or one BoardView component, optionally animating engine moves.
+    static final int BOARD_BUTTONS = 0;
+    static final int BOARD_COMPONENT = 1;
+    static final int BOARD_ANIMATED = 2;
+    // The board palette, shared with the off-screen renderers.
+    static final Color LIGHT_SQUARE = new Color(245, 245, 220);
+    static final Color DARK_SQUARE = new Color(139, 69, 19);
+    // Marks the squares the selected piece can move to.
+    static final Color TARGET_COLOR = new Color(255, 200, 0);
+
     private Container contents;
     private JButton[][] squares = new JButton[8][8];
-    private Color colorLight = new Color(245, 245, 220);
-    private Color colorDark = new Color(139, 69, 19);
-    private int selectedRow = -1;
-    private int selectedCol = -1;
-    private String currentPlayer = "white"; 
-    private ImageIcon whiteKnight;
-    private ImageIcon blackKnight;
-    private ImageIcon whiteBishop;
-    private ImageIcon blackBishop;
-    private ImageIcon blackPawn;
-    private ImageIcon whitePawn;
-    private ImageIcon whiteRook;
-    private ImageIcon blackRook;
-    private ImageIcon whiteQueen;
-    private ImageIcon blackQueen;
-    private ImageIcon whiteKing;
-    private ImageIcon blackKing;
-
-    private Piece[][] board = new Piece[8][8];
-    private Black blackPieces = new Black();
-    private White whitePieces = new White();
+    private BoardView boardView;
+    private Color colorLight = LIGHT_SQUARE;
+    private Color colorDark = DARK_SQUARE;
+    private final Icon[] pieceIcons = new Icon[12];
+
+    private Game game = new Game();
+    private Position position = game.position();
+
+    private Engine engine;
+    private int computerColor;
+    private long thinkMillis;
+    private boolean engineThinking = false;
+    private Analysis analysis;
 
     public Chess() {
+        this(-1, 0);
+    }
+
+    // computerColor is Position.WHITE or BLACK for a game against the engine, -1 for two humans.
+    public Chess(int computerColor, long thinkMillis) {
+        this(computerColor, thinkMillis, BOARD_BUTTONS);
+    }
+
+    public Chess(int computerColor, long thinkMillis, int boardStyle) {
+        this(computerColor, thinkMillis, boardStyle, 0);
+    }
+
+    // analysisLines > 0 adds a panel beside the board with that many lines of continuous analysis.
+    public Chess(int computerColor, long thinkMillis, int boardStyle, int analysisLines) {
+        this.computerColor = computerColor;
+        this.thinkMillis = thinkMillis;
+        if (computerColor != -1) {
+            engine = new Engine();
+        }
+
         contents = getContentPane();
         contents.setLayout(new GridLayout(8, 8));
 
-        Image icon = Toolkit.getDefaultToolkit().getImage("images/chess.png");
-        setIconImage(icon);
+        // From the class path like the pieces; the white king stands in while there is no chess.png.
+        java.net.URL icon = Chess.class.getResource("/images/chess.png");
+        if (icon == null) {
+            icon = Chess.class.getResource("/images/white_king.png");
+        }
+        if (icon != null) {
+            setIconImage(Toolkit.getDefaultToolkit().getImage(icon));
+        }
 
         
-        whiteKnight = loadAndScaleIcon("images/white_knight.png");
-        blackKnight = loadAndScaleIcon("images/black_knight.png");
-        whiteBishop = loadAndScaleIcon("images/white_bishop.png");
-        blackBishop = loadAndScaleIcon("images/black_bishop.png");
-        blackPawn = loadAndScaleIcon("images/black_pawn.png");
-        whitePawn = loadAndScaleIcon("images/white_pawn.png");
-        whiteRook = loadAndScaleIcon("images/white_rook.png");
-        blackRook = loadAndScaleIcon("images/black_rook.png");
-        whiteQueen = loadAndScaleIcon("images/white_queen.png");
-        blackQueen = loadAndScaleIcon("images/black_queen.png");
-        whiteKing = loadAndScaleIcon("images/white_king.png");
-        blackKing = loadAndScaleIcon("images/black_king.png");
-
-        initializeBoard();
+        // Pieces are decoded in the background; the board shows empty squares until they are ready.
+        for (int piece = 0; piece < pieceIcons.length; piece++) {
+            pieceIcons[piece] = PieceSprites.icon(piece, 60);
+        }
+        PieceSprites.setFirstFrameListener(millis -> System.err.printf("startup: first frame with pieces %d ms after launch, sprites decoded in %d ms%n",
+                millis, PieceSprites.loaded().decodeNanos() / 1000000));
+        PieceSprites.load().whenComplete((sprites, error) -> SwingUtilities.invokeLater(() -> {
+            if (error != null) {
+                Throwable cause = error;
+                while (cause.getCause() != null) {
+                    cause = cause.getCause();
+                }
+                JOptionPane.showMessageDialog(this, cause.getMessage(), "Chess", JOptionPane.ERROR_MESSAGE);
+            } else {
+                contents.repaint();
+            }
+        }));
+
+        Container grid = contents;
+        if (analysisLines > 0) {
+            analysis = new Analysis(analysisLines);
+            contents.setLayout(new BorderLayout());
+            contents.add(analysis.component(), BorderLayout.EAST);
+            if (boardStyle == BOARD_BUTTONS) {
+                grid = new JPanel(new GridLayout(8, 8));
+                contents.add(grid, BorderLayout.CENTER);
+            }
+        }
+
+        if (boardStyle != BOARD_BUTTONS) {
+            contents.setLayout(new BorderLayout());
+            boardView = new BoardView(game, colorLight, colorDark);
+            boardView.setSquareListener(this::processClick);
+            boardView.setAnimated(boardStyle == BOARD_ANIMATED);
+            contents.add(boardView, BorderLayout.CENTER);
+        }
 
         ButtonHandler buttonHandler = new ButtonHandler();
 
-        for (int i = 0; i < 8; i++) {
+        for (int i = 0; i < 8 && boardView == null; i++) {
             for (int j = 0; j < 8; j++) {
                 squares[i][j] = new JButton();
                 if ((i + j) % 2 == 0) {
@@ -61,537 +111,295 @@ public class Chess extends JFrame {
                     squares[i][j].setBackground(colorDark);
                 }
                 squares[i][j].setPreferredSize(new Dimension(60, 60));
-                contents.add(squares[i][j]);
+                grid.add(squares[i][j]);
                 squares[i][j].addActionListener(buttonHandler);
             }
         }
 
         updateBoardDisplay();
 
-        setSize(500, 500);
+        getRootPane().getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(KeyEvent.VK_H, 0), "hint");
+        getRootPane().getActionMap().put("hint", new AbstractAction() {
+            public void actionPerformed(ActionEvent e) {
+                showHint();
+            }
+        });
+        int shortcut = Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx();
+        getRootPane().getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(KeyEvent.VK_Z, shortcut), "undo");
+        getRootPane().getActionMap().put("undo", new AbstractAction() {
+            public void actionPerformed(ActionEvent e) {
+                takeBack();
+            }
+        });
+        getRootPane().getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(KeyEvent.VK_Y, shortcut), "redo");
+        getRootPane().getActionMap().put("redo", new AbstractAction() {
+            public void actionPerformed(ActionEvent e) {
+                replay();
+            }
+        });
+
+        setSize(analysis == null ? 500 : 860, 500);
         setResizable(false);
         setLocationRelativeTo(null);
         setVisible(true);
-    }
-
-    private ImageIcon loadAndScaleIcon(String path) {
-        ImageIcon icon = new ImageIcon(path);
-        return scaleImageIcon(icon, 60, 60);
-    }
 
-    private ImageIcon scaleImageIcon(ImageIcon icon, int width, int height) {
-        Image img = icon.getImage();
-        Image scaledImg = img.getScaledInstance(width, height, Image.SCALE_SMOOTH);
-        return new ImageIcon(scaledImg);
-    }
-
-    private void initializeBoard() {
-        for (int i = 0; i < 8; i++) {
-            for (int j = 0; j < 8; j++) {
-                board[i][j] = null;
-            }
-        }
-        blackPieces.initialize(board);
-        whitePieces.initialize(board);
+        updateAnalysis();
+        startEngineIfItsTurn();
     }
 
     private void updateBoardDisplay() {
-        for (int i = 0; i < 8; i++) {
-            for (int j = 0; j < 8; j++) {
-                if (board[i][j] != null) {
-                    Piece piece = board[i][j];
-                    switch (piece.getType()) {
-                        case "knight":
-                            squares[i][j].setIcon(piece.getColor().equals("black") ? blackKnight : whiteKnight);
-                            break;
-                        case "bishop":
-                            squares[i][j].setIcon(piece.getColor().equals("black") ? blackBishop : whiteBishop);
-                            break;
-                        case "pawn":
-                            squares[i][j].setIcon(piece.getColor().equals("black") ? blackPawn : whitePawn);
-                            break;
-                        case "rook":
-                            squares[i][j].setIcon(piece.getColor().equals("black") ? blackRook : whiteRook);
-                            break;
-                        case "queen":
-                            squares[i][j].setIcon(piece.getColor().equals("black") ? blackQueen : whiteQueen);
-                            break;
-                        case "king":
-                            squares[i][j].setIcon(piece.getColor().equals("black") ? blackKing : whiteKing);
-                            break;
-                    }
-                } else {
-                    squares[i][j].setIcon(null);
+        Telemetry.RenderEvent event = new Telemetry.RenderEvent();
+        event.begin();
+        long start = System.nanoTime();
+        int updated = 64;
+        if (boardView != null) {
+            updated = Long.bitCount(boardView.setOutlines(0L, Color.GREEN));
+        } else {
+            for (int i = 0; i < 8; i++) {
+                for (int j = 0; j < 8; j++) {
+                    int piece = position.pieceAt(i, j);
+                    squares[i][j].setIcon(piece == Position.NO_PIECE ? null : pieceIcons[piece]);
+                    squares[i][j].setBorder(BorderFactory.createEmptyBorder());
                 }
-                squares[i][j].setBorder(BorderFactory.createEmptyBorder());
             }
         }
+        Telemetry.rendered(System.nanoTime() - start, updated);
+        if (event.shouldCommit()) {
+            event.board = boardView != null ? "component" : "buttons";
+            event.squares = updated;
+            event.commit();
+        }
     }
 
-    private boolean isValidMove(int i, int j) {
-        if (selectedRow == -1 || selectedCol == -1) {
-            return false;
+    private void processClick(int i, int j) {
+        if (game.isOver()) {
+            return;
         }
-    
-        Piece selectedPiece = board[selectedRow][selectedCol];
-        switch (selectedPiece.getType()) {
-            case "knight":
-                return selectedPiece.getColor().equals("white") ? whitePieces.isValidKnightMove(i, j, selectedRow, selectedCol)
-                                                                : blackPieces.isValidKnightMove(i, j, selectedRow, selectedCol);
-            case "bishop":
-                return selectedPiece.getColor().equals("white") ? whitePieces.isValidBishopMove(i, j, selectedRow, selectedCol)
-                                                                : blackPieces.isValidBishopMove(i, j, selectedRow, selectedCol);
-            case "pawn":
-                return selectedPiece.getColor().equals("white") ? whitePieces.isValidPawnMove(i, j, selectedRow, selectedCol, board)
-                                                                : blackPieces.isValidPawnMove(i, j, selectedRow, selectedCol, board);
-            case "rook":
-                return selectedPiece.getColor().equals("white") ? whitePieces.isValidRookMove(i, j, selectedRow, selectedCol, board)
-                                                                : blackPieces.isValidRookMove(i, j, selectedRow, selectedCol, board);
-            case "queen":
-                return selectedPiece.getColor().equals("white") ? whitePieces.isValidQueenMove(i, j, selectedRow, selectedCol, board)
-                                                                : blackPieces.isValidQueenMove(i, j, selectedRow, selectedCol, board);
-            case "king":
-                return selectedPiece.getColor().equals("white") ? whitePieces.isValidKingMove(i, j, selectedRow, selectedCol, board)
-                                                                : blackPieces.isValidKingMove(i, j, selectedRow, selectedCol, board);
-            default:
-                return false;
+
+        // Clicking while the engine thinks tells it to move now with the best line found so far
+        if (engineThinking) {
+            engine.stop();
+            return;
         }
-    }
-    
 
-    private boolean isKingInCheck() {
-        int kingRow = -1;
-        int kingCol = -1;
-    
-        
-        for (int i = 0; i < 8; i++) {
-            for (int j = 0; j < 8; j++) {
-                Piece piece = board[i][j];
-                if (piece != null && piece.getType().equals("king") && piece.getColor().equals(currentPlayer)) {
-                    kingRow = i;
-                    kingCol = j;
-                    break;
+        int previousRow = game.selectedRow();
+        int previousCol = game.selectedCol();
+        long previousTargets = game.legalTargets();
+        switch (game.processClick(i, j)) {
+            case Game.SELECTED:
+                if (boardView != null) {
+                    boardView.sync();
+                } else {
+                    squares[i][j].setBorder(BorderFactory.createLineBorder(Color.RED, 3));
+                    setTargetBorders(game.legalTargets(), BorderFactory.createLineBorder(TARGET_COLOR, 3));
                 }
-            }
-            if (kingRow != -1) break;
-        }
-    
-        if (kingRow == -1) {
-            throw new RuntimeException("King not found for player " + currentPlayer);
-        }
-    
-        
-        for (int i = 0; i < 8; i++) {
-            for (int j = 0; j < 8; j++) {
-                Piece attackingPiece = board[i][j];
-                if (attackingPiece != null && !attackingPiece.getColor().equals(currentPlayer)) {
-                    Player opponent = attackingPiece.getColor().equals("black") ? blackPieces : whitePieces;
-    
-                    switch (attackingPiece.getType()) {
-                        case "knight":
-                            if (opponent.isValidKnightMove(kingRow, kingCol, i, j)) return true;
-                            break;
-                        case "bishop":
-                            if (opponent.isValidBishopMove(kingRow, kingCol, i, j)) return true;
-                            break;
-                        case "rook":
-                            if (opponent.isValidRookMove(kingRow, kingCol, i, j, board)) return true;
-                            break;
-                        case "queen":
-                            if (opponent.isValidQueenMove(kingRow, kingCol, i, j, board)) return true;
-                            break;
-                        case "pawn":
-                            if (opponent.isValidPawnMove(kingRow, kingCol, i, j, board)) return true;
-                            break;
-                    }
+                break;
+            case Game.DESELECTED:
+                if (boardView != null) {
+                    boardView.sync();
+                } else {
+                    squares[previousRow][previousCol].setBorder(BorderFactory.createEmptyBorder());
+                    setTargetBorders(previousTargets, BorderFactory.createEmptyBorder());
                 }
-            }
+                break;
+            case Game.ILLEGAL:
+                JOptionPane.showMessageDialog(this, "Invalid move: King is in check.");
+                updateBoardDisplay();
+                break;
+            case Game.MOVED:
+                afterMove(Move.NONE);
+                break;
         }
-    
-        return false;
     }
-    
 
+    private void setTargetBorders(long targets, javax.swing.border.Border border) {
+        for (long bits = targets; bits != 0; bits &= bits - 1) {
+            int sq = Long.numberOfTrailingZeros(bits);
+            squares[Position.row(sq)][Position.col(sq)].setBorder(border);
+        }
+    }
 
-    private boolean canKingMoveToSafety() {
-        int kingRow = -1;
-        int kingCol = -1;
-    
-        
-        for (int i = 0; i < 8; i++) {
-            for (int j = 0; j < 8; j++) {
-                Piece piece = board[i][j];
-                if (piece != null && piece.getType().equals("king") && piece.getColor().equals(currentPlayer)) {
-                    kingRow = i;
-                    kingCol = j;
-                    break;
-                }
-            }
-            if (kingRow != -1) break;
+    // move is the move just played when it is known (engine moves), so the board can animate it.
+    private void afterMove(int move) {
+        if (boardView != null) {
+            boardView.syncAfterMove(move);
+        } else {
+            updateBoardDisplay();
         }
-    
-        if (kingRow == -1) {
-            throw new RuntimeException("King not found for player " + currentPlayer);
+        showTablebaseVerdict();
+        updateAnalysis();
+
+        int currentPlayer = game.currentPlayer();
+        if (game.status() == Game.CHECKMATE) {
+            JOptionPane.showMessageDialog(this, "Checkmate! " + Position.COLOR_NAMES[currentPlayer ^ 1] + " wins.");
+            return;
         }
-    
-        
-        for (int i = kingRow - 1; i <= kingRow + 1; i++) {
-            for (int j = kingCol - 1; j <= kingCol + 1; j++) {
-                if (i >= 0 && i < 8 && j >= 0 && j < 8 && (i != kingRow || j != kingCol)) {
-                    Piece targetPiece = board[i][j];
-                    if (targetPiece == null || !targetPiece.getColor().equals(currentPlayer)) {
-                        
-                        Piece originalPiece = board[i][j];
-                        board[i][j] = board[kingRow][kingCol];
-                        board[kingRow][kingCol] = null;
-    
-                        
-                        boolean isInCheck = isKingInCheck();
-    
-                        
-                        board[kingRow][kingCol] = board[i][j];
-                        board[i][j] = originalPiece;
-    
-                        if (!isInCheck) {
-                            return true;
-                        }
-                    }
-                }
-            }
+        if (game.status() == Game.STALEMATE) {
+            JOptionPane.showMessageDialog(this, "Stalemate! The game is a draw.");
+            return;
         }
-    
-        return false;
-    }
-    
-    
-    
-    
-    private void processClick(int i, int j) {
-        if (selectedRow == i && selectedCol == j) {
-            squares[selectedRow][selectedCol].setBorder(BorderFactory.createEmptyBorder());
-            selectedRow = -1;
-            selectedCol = -1;
+        if (game.status() == Game.REPETITION) {
+            JOptionPane.showMessageDialog(this, "Draw by threefold repetition.");
             return;
         }
-    
-        if (selectedRow == -1 || selectedCol == -1) {
-            if (board[i][j] != null) {
-                Piece piece = board[i][j];
-                if (piece.getColor().equals(currentPlayer)) {
-                    if (selectedRow != -1 && selectedCol != -1) {
-                        squares[selectedRow][selectedCol].setBorder(BorderFactory.createEmptyBorder());
-                    }
-    
-                    selectedRow = i;
-                    selectedCol = j;
-                    squares[i][j].setBorder(BorderFactory.createLineBorder(Color.RED, 3));
-                    return;
-                }
-            }
-        } else {
-            if (!isValidMove(i, j)) {
-                return;
-            }
-    
-            Piece movingPiece = board[selectedRow][selectedCol];
-            Piece targetPiece = board[i][j];
-    
-            // Perform the move
-            board[i][j] = movingPiece;
-            board[selectedRow][selectedCol] = null;
-    
-            // Check if the king is in check after the move
-            boolean isInCheckAfterMove = isKingInCheck();
-            if (isInCheckAfterMove) {
-                // Undo the move
-                board[selectedRow][selectedCol] = movingPiece;
-                board[i][j] = targetPiece;
-    
-                JOptionPane.showMessageDialog(this, "Invalid move: King is in check.");
-                selectedRow = -1;
-                selectedCol = -1;
-                updateBoardDisplay();
-                return;
-            }
-    
-            // Finalize the move
-            board[i][j] = movingPiece;
-            board[selectedRow][selectedCol] = null;
-            selectedRow = -1;
-            selectedCol = -1;
-    
-            updateBoardDisplay();
-    
-            if (isKingInCheck()) {
-                if (canKingMoveToSafety()) {
-                    JOptionPane.showMessageDialog(this, "Your king is in check, but can move to safety.");
-                } else {
-                    JOptionPane.showMessageDialog(this, "Checkmate! Your king is in check and cannot move to safety.");
-                    return;
-                }
-            } else {
-                switchPlayer();
-            }
+        if (game.status() == Game.FIFTY_MOVES) {
+            JOptionPane.showMessageDialog(this, "Draw by the fifty-move rule.");
+            return;
         }
-    }
-        
-    
-
-    private void switchPlayer() {
-        currentPlayer = currentPlayer.equals("white") ? "black" : "white";
-    }
 
-    private class ButtonHandler implements ActionListener {
-        public void actionPerformed(ActionEvent e) {
-            Object source = e.getSource();
-
-            for (int i = 0; i < 8; i++) {
-                for (int j = 0; j < 8; j++) {
-                    if (source == squares[i][j]) {
-                        processClick(i, j);
-                        return;
-                    }
-                }
+        if (game.isKingInCheck() && currentPlayer != computerColor) {
+            if (game.canKingMoveToSafety()) {
+                JOptionPane.showMessageDialog(this, "Your king is in check, but can move to safety.");
+            } else {
+                JOptionPane.showMessageDialog(this, "Your king is in check and must block or capture.");
             }
         }
-    }
 
-    public static void main(String[] args) {
-        SwingUtilities.invokeLater(Chess::new);
+        startEngineIfItsTurn();
     }
 
-    private class Piece {
-        private String type;
-        private String color;
+    // With few pieces left the tablebases know the outcome; it is shown in the title bar.
+    private void showTablebaseVerdict() {
+        Tablebase tablebase = Tablebase.shared();
+        String verdict = tablebase == null ? null : tablebase.describe(position);
+        setTitle(verdict == null ? "" : "Tablebase: " + verdict);
+    }
 
-        public Piece(String type, String color) {
-            this.type = type;
-            this.color = color;
+    // The analysis panel follows the board, and pauses while the game is over or the engine thinks about its move.
+    private void updateAnalysis() {
+        if (analysis == null) {
+            return;
         }
-
-        public String getType() {
-            return type;
+        if (game.isOver() || engine != null && game.currentPlayer() == computerColor) {
+            analysis.stop();
+        } else {
+            analysis.analyze(position);
         }
+    }
 
-        public String getColor() {
-            return color;
+    // Ctrl+Z takes back a move; against the engine it goes back to the player's previous turn.
+    private void takeBack() {
+        if (engineThinking || !game.canUndo()) {
+            return;
         }
+        do {
+            game.undo();
+        } while (engine != null && game.currentPlayer() == computerColor && game.canUndo());
+        updateBoardDisplay();
+        showTablebaseVerdict();
+        updateAnalysis();
+        startEngineIfItsTurn();
     }
 
-    private abstract class Player {
-        public abstract void initialize(Piece[][] board);
-
-        public abstract boolean isValidKnightMove(int i, int j, int startRow, int startCol);
-
-        public abstract boolean isValidBishopMove(int i, int j, int startRow, int startCol);
-
-        public abstract boolean isValidPawnMove(int i, int j, int startRow, int startCol, Piece[][] board);
-
-        public abstract boolean isValidRookMove(int i, int j, int startRow, int startCol, Piece[][] board);
-
-        public abstract boolean isValidQueenMove(int i, int j, int startRow, int startCol, Piece[][] board);
-
-        public abstract boolean isValidKingMove(int i, int j, int startRow, int startCol, Piece[][] board);
+    // Ctrl+Y replays what was taken back, the engine's replies included.
+    private void replay() {
+        if (engineThinking || !game.canRedo()) {
+            return;
+        }
+        int move;
+        do {
+            move = game.redo();
+        } while (engine != null && game.currentPlayer() == computerColor && game.canRedo());
+        afterMove(move);
     }
 
-    private class Black extends Player {
-        public void initialize(Piece[][] board) {
-            
-            for (int j = 0; j < 8; j++) {
-                board[1][j] = new Piece("pawn", "black");
-            }
-            
-            board[0][0] = new Piece("rook", "black");
-            board[0][1] = new Piece("knight", "black");
-            board[0][2] = new Piece("bishop", "black");
-            board[0][3] = new Piece("queen", "black");
-            board[0][4] = new Piece("king", "black");
-            board[0][5] = new Piece("bishop", "black");
-            board[0][6] = new Piece("knight", "black");
-            board[0][7] = new Piece("rook", "black");
+    private void startEngineIfItsTurn() {
+        if (engine == null || game.isOver() || game.currentPlayer() != computerColor) {
+            return;
         }
-
-        public boolean isValidKnightMove(int i, int j, int startRow, int startCol) {
-            int rowDelta = Math.abs(i - startRow);
-            int colDelta = Math.abs(j - startCol);
-            boolean isValidMove = (rowDelta == 1 && colDelta == 2) || (rowDelta == 2 && colDelta == 1);
-            return isValidMove && (board[i][j] == null || !board[i][j].getColor().equals(board[startRow][startCol].getColor()));
-        }        
-        
-
-        public boolean isValidBishopMove(int i, int j, int startRow, int startCol) {
-            if (Math.abs(i - startRow) == Math.abs(j - startCol)) {
-                int RowDirection = (i - startRow) > 0 ? 1 : -1;
-                int ColDirection = (j - startCol) > 0 ? 1 : -1;
-                int row = startRow + RowDirection;
-                int col = startCol + ColDirection;
-                while (row != i && col != j) {
-                    if (board[row][col] != null) {
-                        return false;
+        engineThinking = true;
+        engine.think(position, Search.Limits.time(thinkMillis), result ->
+                SwingUtilities.invokeLater(() -> {
+                    engineThinking = false;
+                    if (result.bestMove != Move.NONE) {
+                        game.playMove(result.bestMove);
+                        afterMove(result.bestMove);
                     }
-                    row += RowDirection;
-                    col += ColDirection;
-                }
-                
-                return board[i][j] == null || !board[i][j].getColor().equals(board[startRow][startCol].getColor());
-            }
-            return false;
-        }
+                }));
+    }
         
+    
 
-        public boolean isValidPawnMove(int i, int j, int startRow, int startCol, Piece[][] board) {
-            int direction = 1; 
-            Piece pawn = board[startRow][startCol];
-
-            if (j == startCol && board[i][j] == null) {
-                if ((i == startRow + direction && board[i][j] == null) ||
-                    (i == startRow + 2 * direction && startRow == 1 && board[i][j] == null)) {
-                    return true;
-                }
-            }
-
-            if (Math.abs(j - startCol) == 1 && i == startRow + direction && board[i][j] != null &&
-                !board[i][j].getColor().equals(pawn.getColor())) {
-                return true;
-            }
-
-            return false;
-        }
-
-        public boolean isValidRookMove(int i, int j, int startRow, int startCol, Piece[][] board) {
-            if (i == startRow || j == startCol) {
-                int rowDirection = Integer.signum(i - startRow);
-                int colDirection = Integer.signum(j - startCol);
-                int row = startRow + rowDirection;
-                int col = startCol + colDirection;
-        
-                while (row != i || col != j) {
-                    if (board[row][col] != null) {
-                        return false; // Blocked by another piece
-                    }
-                    row += rowDirection;
-                    col += colDirection;
-                }
-        
-                return board[i][j] == null || !board[i][j].getColor().equals(board[startRow][startCol].getColor());
-            }
-            return false;
+    // H asks for a hint: the engine answers from the opening book when the position is in it, otherwise
+    // from a search, and the suggested move's squares are outlined.
+    private void showHint() {
+        if (game.isOver() || engineThinking || game.currentPlayer() == computerColor) {
+            return;
         }
-        
-        public boolean isValidQueenMove(int i, int j, int startRow, int startCol, Piece[][] board) {
-            return isValidRookMove(i, j, startRow, startCol, board) || isValidBishopMove(i, j, startRow, startCol);
+        if (engine == null) {
+            engine = new Engine();
         }
-        
-
-        public boolean isValidKingMove(int i, int j, int startRow, int startCol, Piece[][] board) {
-
-            boolean isMoveInRange = Math.abs(i - startRow) <= 1 && Math.abs(j - startCol) <= 1;
-            
-
-            boolean isTargetSquareValid = board[i][j] == null || !board[i][j].getColor().equals(board[startRow][startCol].getColor());
-            
-            return isMoveInRange && isTargetSquareValid;
-        }        
-        
+        engineThinking = true;
+        engine.think(position, Search.Limits.time(thinkMillis), result ->
+                SwingUtilities.invokeLater(() -> {
+                    engineThinking = false;
+                    if (result.bestMove != Move.NONE) {
+                        int from = Move.from(result.bestMove);
+                        int to = Move.to(result.bestMove);
+                        if (boardView != null) {
+                            boardView.setOutlines(1L << from | 1L << to, Color.GREEN);
+                        } else {
+                            squares[Position.row(from)][Position.col(from)].setBorder(BorderFactory.createLineBorder(Color.GREEN, 3));
+                            squares[Position.row(to)][Position.col(to)].setBorder(BorderFactory.createLineBorder(Color.GREEN, 3));
+                        }
+                    }
+                }));
     }
 
-    private class White extends Player {
-        public void initialize(Piece[][] board) {
-            
-            for (int j = 0; j < 8; j++) {
-                board[6][j] = new Piece("pawn", "white");
-            }
-            
-            board[7][0] = new Piece("rook", "white");
-            board[7][1] = new Piece("knight", "white");
-            board[7][2] = new Piece("bishop", "white");
-            board[7][3] = new Piece("queen", "white");
-            board[7][4] = new Piece("king", "white");
-            board[7][5] = new Piece("bishop", "white");
-            board[7][6] = new Piece("knight", "white");
-            board[7][7] = new Piece("rook", "white");
-        }
-
-        public boolean isValidKnightMove(int i, int j, int startRow, int startCol) {
-            int rowDelta = Math.abs(i - startRow);
-            int colDelta = Math.abs(j - startCol);
-            boolean isValidMove = (rowDelta == 1 && colDelta == 2) || (rowDelta == 2 && colDelta == 1);
-            return isValidMove && (board[i][j] == null || !board[i][j].getColor().equals(board[startRow][startCol].getColor()));
-        }
-        
+    private class ButtonHandler implements ActionListener {
+        public void actionPerformed(ActionEvent e) {
+            Object source = e.getSource();
 
-        public boolean isValidBishopMove(int i, int j, int startRow, int startCol) {
-            if (Math.abs(i - startRow) == Math.abs(j - startCol)) {
-                int RowDirection = (i - startRow) > 0 ? 1 : -1;
-                int ColDirection = (j - startCol) > 0 ? 1 : -1;
-                int row = startRow + RowDirection;
-                int col = startCol + ColDirection;
-                while (row != i && col != j) {
-                    if (board[row][col] != null) {
-                        return false;
+            for (int i = 0; i < 8; i++) {
+                for (int j = 0; j < 8; j++) {
+                    if (source == squares[i][j]) {
+                        processClick(i, j);
+                        return;
                     }
-                    row += RowDirection;
-                    col += ColDirection;
                 }
-                
-                return board[i][j] == null || !board[i][j].getColor().equals(board[startRow][startCol].getColor());
             }
-            return false;
         }
-        
-
-        public boolean isValidPawnMove(int i, int j, int startRow, int startCol, Piece[][] board) {
-            int direction = -1; 
-            Piece pawn = board[startRow][startCol];
-
-            if (j == startCol && board[i][j] == null) {
-                if ((i == startRow + direction && board[i][j] == null) ||
-                    (i == startRow + 2 * direction && startRow == 6 && board[i][j] == null)) {
-                    return true;
-                }
-            }
-
-            if (Math.abs(j - startCol) == 1 && i == startRow + direction && board[i][j] != null &&
-                !board[i][j].getColor().equals(pawn.getColor())) {
-                return true;
-            }
+    }
 
-            return false;
+    // Usage: java Chess [--computer white|black] [--movetime millis] [--book book.bin] [--tablebases dir]
+    //                   [--network eval.nnue] [--board buttons|component] [--animate] [--analyze lines]
+    //        java Chess --uci
+    public static void main(String[] args) throws java.io.IOException {
+        if (java.util.Arrays.asList(args).contains("--uci")) {
+            new Uci(System.in, System.out).run();
+            return;
         }
 
-        public boolean isValidRookMove(int i, int j, int startRow, int startCol, Piece[][] board) {
-            if (i == startRow || j == startCol) {
-                int rowDirection = Integer.signum(i - startRow);
-                int colDirection = Integer.signum(j - startCol);
-                int row = startRow + rowDirection;
-                int col = startCol + colDirection;
-        
-                while (row != i || col != j) {
-                    if (board[row][col] != null) {
-                        return false; // Blocked by another piece
-                    }
-                    row += rowDirection;
-                    col += colDirection;
-                }
-        
-                return board[i][j] == null || !board[i][j].getColor().equals(board[startRow][startCol].getColor());
+        int computerColor = -1;
+        long thinkMillis = 2000;
+        String board = null;
+        boolean animate = false;
+        int analysisLines = 0;
+        for (int k = 0; k < args.length; k++) {
+            if (args[k].equals("--computer")) {
+                computerColor = k + 1 < args.length && args[k + 1].equals("white") ? Position.WHITE : Position.BLACK;
+            } else if (args[k].equals("--movetime") && k + 1 < args.length) {
+                thinkMillis = Long.parseLong(args[++k]);
+            } else if (args[k].equals("--book") && k + 1 < args.length) {
+                PolyglotBook.loadShared(java.nio.file.Paths.get(args[++k]));
+            } else if (args[k].equals("--tablebases") && k + 1 < args.length) {
+                Tablebase.loadShared(java.nio.file.Paths.get(args[++k]));
+            } else if (args[k].equals("--network") && k + 1 < args.length) {
+                Network.loadShared(java.nio.file.Paths.get(args[++k]));
+            } else if (args[k].equals("--board") && k + 1 < args.length) {
+                board = args[++k];
+            } else if (args[k].equals("--animate")) {
+                animate = true;
+            } else if (args[k].equals("--analyze") && k + 1 < args.length) {
+                analysisLines = Integer.parseInt(args[++k]);
             }
-            return false;
         }
-        
-        public boolean isValidQueenMove(int i, int j, int startRow, int startCol, Piece[][] board) {
-            return isValidRookMove(i, j, startRow, startCol, board) || isValidBishopMove(i, j, startRow, startCol);
-        }
-        
-
-        public boolean isValidKingMove(int i, int j, int startRow, int startCol, Piece[][] board) {
-
-            boolean isMoveInRange = Math.abs(i - startRow) <= 1 && Math.abs(j - startCol) <= 1;
-            
-            boolean isTargetSquareValid = board[i][j] == null || !board[i][j].getColor().equals(board[startRow][startCol].getColor());
-            
-            return isMoveInRange && isTargetSquareValid;
-        }        
-        
+        // Only the component animates, so --animate alone picks it; next to "--board buttons" it is ignored.
+        boolean component = board == null ? animate : board.equals("component");
+        int color = computerColor;
+        long millis = thinkMillis;
+        int style = component ? (animate ? BOARD_ANIMATED : BOARD_COMPONENT) : BOARD_BUTTONS;
+        int lines = analysisLines;
+        SwingUtilities.invokeLater(() -> new Chess(color, millis, style, lines));
     }
 }
@@ -0,0 +1,44 @@
+// The counters of Telemetry as seen in JConsole or JMC under chess:type=Metrics. JMX only accepts public
+// MXBean interfaces, which is why this one is public. Histograms are counts per power-of-two bucket
+// (bucket 0 holds 0, bucket k holds [2^(k-1), 2^k)); percentiles are the upper bound of their bucket.
+public interface ChessMetricsMXBean {
+    long getNodes();
+
+    long getNodesPerSecond();
+
+    long getEngineMoves();
+
+    long getSearchIterations();
+
+    long getTableProbes();
+
+    long getTableHits();
+
+    double getTableHitRate();
+
+    long[] getEngineMoveMillisHistogram();
+
+    long getEngineMoveMillisP50();
+
+    long getEngineMoveMillisP99();
+
+    long[] getServerMoveMicrosHistogram();
+
+    long getServerMoveMicrosP50();
+
+    long getServerMoveMicrosP99();
+
+    long getValidMoveChecks();
+
+    long getKingInCheckChecks();
+
+    long getKingSafetyChecks();
+
+    long getBoardRenders();
+
+    double getMeanRenderMicros();
+
+    double getMeanSquaresPerRender();
+
+    void reset();
+}
@@ -0,0 +1,192 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+// Runs searches on a dedicated daemon thread so callers (the Swing EDT in particular) never block on them.
+// With more than one thread the search is Lazy SMP: helper threads search the same root alongside the
+// main thread, sharing only the transposition table, and the main thread's result is the one reported.
+final class Engine {
+    static final int DEFAULT_HASH_MB = 64;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "chess-engine");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final TranspositionTable table;
+    private ExecutorService helpers;
+    private int threads;
+    private volatile List<Search> current;
+    private volatile boolean useBook = true;
+    private volatile int multiPv = 1;
+
+    Engine() {
+        this(DEFAULT_HASH_MB, Runtime.getRuntime().availableProcessors());
+    }
+
+    Engine(int hashMegabytes, int threads) {
+        table = new TranspositionTable(hashMegabytes);
+        setThreads(threads);
+    }
+
+    TranspositionTable table() {
+        return table;
+    }
+
+    int threads() {
+        return threads;
+    }
+
+    // Whether think answers from the shared opening book, when one is loaded, instead of searching.
+    void setUseBook(boolean useBook) {
+        this.useBook = useBook;
+    }
+
+    // How many lines the main thread reports to the listener; see Search.setMultiPv.
+    void setMultiPv(int lines) {
+        multiPv = lines;
+    }
+
+    synchronized void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+        if (helpers != null) {
+            helpers.shutdownNow();
+        }
+        helpers = this.threads == 1 ? null : Executors.newFixedThreadPool(this.threads - 1, runnable -> {
+            Thread thread = new Thread(runnable, "chess-engine-helper");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Searches private copies of position and hands the result to onResult on the engine thread.
+    Future<?> think(Position position, Search.Limits limits, Consumer<Search.Result> onResult) {
+        return think(position, limits, null, onResult);
+    }
+
+    // As above, also streaming each finished iteration of the main thread to listener (on the engine thread).
+    synchronized Future<?> think(Position position, Search.Limits limits, Search.Listener listener,
+                                 Consumer<Search.Result> onResult) {
+        long start = System.nanoTime();
+        PolyglotBook book = useBook ? PolyglotBook.shared() : null;
+        int bookMove = book == null ? Move.NONE : book.probe(position);
+        if (bookMove != Move.NONE) {
+            Search.Result result = new Search.Result(bookMove, 0, 0, 0, new int[] {bookMove});
+            return executor.submit(() -> onResult.accept(moved("book", result, start, 0, 0)));
+        }
+        Tablebase tablebase = Tablebase.shared();
+        if (tablebase != null && Tablebase.covers(position)) {
+            Position root = position.copy();
+            int tablebaseMove = tablebase.bestMove(root);
+            if (tablebaseMove != Move.NONE) {
+                Search.Result result = new Search.Result(tablebaseMove, tablebase.score(root, 0), 0, 0, new int[] {tablebaseMove});
+                return executor.submit(() -> onResult.accept(moved("tablebase", result, start, 0, 0)));
+            }
+        }
+        long probes = table.probes();
+        long hits = table.hits();
+        List<Search> searches = new ArrayList<>(threads);
+        Network network = Network.shared();
+        for (int index = 0; index < threads; index++) {
+            Position copy = position.copy();
+            copy.setNetwork(network);
+            searches.add(new Search(copy, table, index));
+        }
+        searches.get(0).setListener(listener);
+        searches.get(0).setMultiPv(multiPv);
+        ExecutorService pool = helpers;
+        current = searches;
+        return executor.submit(() -> {
+            List<Future<?>> running = new ArrayList<>();
+            Search.Limits helperLimits = new Search.Limits(limits.depth, 0, 0);
+            for (int index = 1; index < searches.size(); index++) {
+                Search helper = searches.get(index);
+                running.add(pool.submit(() -> helper.run(helperLimits)));
+            }
+
+            Search.Result result = searches.get(0).run(limits);
+            long nodes = result.nodes;
+            for (int index = 1; index < searches.size(); index++) {
+                searches.get(index).stop();
+            }
+            for (int index = 0; index < running.size(); index++) {
+                awaitQuietly(running.get(index));
+                nodes += searches.get(index + 1).nodes();
+            }
+
+            if (current == searches) {
+                current = null;
+            }
+            Search.Result total = new Search.Result(result.bestMove, result.score, result.depth, nodes, result.pv);
+            onResult.accept(moved("search", total, start, table.probes() - probes, table.hits() - hits));
+        });
+    }
+
+    // Records an answer in the telemetry counters and, while recording, as a Flight Recorder event.
+    private static Search.Result moved(String source, Search.Result result, long start, long probes, long hits) {
+        long nanos = System.nanoTime() - start;
+        Telemetry.engineMoved(result.nodes, nanos, probes, hits);
+        Telemetry.EngineMoveEvent event = new Telemetry.EngineMoveEvent();
+        if (event.shouldCommit()) {
+            event.source = source;
+            event.move = Move.toUci(result.bestMove);
+            event.depth = result.depth;
+            event.score = result.score;
+            event.nodes = result.nodes;
+            event.nps = nanos == 0 ? 0 : (long) (result.nodes * 1e9 / nanos);
+            event.tableHits = hits;
+            event.tableProbes = probes;
+            event.searchNanos = nanos;
+            event.commit();
+        }
+        return result;
+    }
+
+    // Asks the running search to finish now; it still reports the best move found so far.
+    void stop() {
+        List<Search> searches = current;
+        if (searches != null) {
+            for (Search search : searches) {
+                search.stop();
+            }
+        }
+    }
+
+    // Node count of the running search across all threads; approximate while the threads are still searching.
+    long nodes() {
+        List<Search> searches = current;
+        long nodes = 0;
+        if (searches != null) {
+            for (Search search : searches) {
+                nodes += search.nodes();
+            }
+        }
+        return nodes;
+    }
+
+    boolean isThinking() {
+        return current != null;
+    }
+
+    void shutdown() {
+        stop();
+        executor.shutdownNow();
+        if (helpers != null) {
+            helpers.shutdownNow();
+        }
+    }
+
+    private static void awaitQuietly(Future<?> future) {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Helper search failed", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,308 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Search quality against time: runs EPD test suites (WAC, ECM, STS ...) and counts the positions where the
+// engine plays a "bm" move, and avoids every "am" move.
+//   java EpdSuite [--threads n] [--movetime ms] [--nodes n] [--hash mb] [--out results.tsv] [--json summary.json]
+//                 file.epd ...
+// Positions are searched in parallel, one single-threaded search per core with its own table, under the same
+// budget each (1000 ms when neither is given). One line per position is written, in file order:
+//   <id>\t<solved|failed>\t<move played, SAN>\t<ms to solution or -1>\t<nodes to solution or -1>\t<depth>\t<nodes>
+// A position counts as solved from the iteration whose best move was right and stayed right to the end. The
+// summary (solve rate, time-to-solution percentiles and power-of-two histogram, nodes per second) goes to
+// stderr, and as one JSON object to the --json file for tracking per build.
+final class EpdSuite {
+    // One test position.
+    static final class Entry {
+        final String id;
+        final String fen;
+        final int[] best;
+        final int[] avoid;
+
+        Entry(String id, String fen, int[] best, int[] avoid) {
+            this.id = id;
+            this.fen = fen;
+            this.best = best;
+            this.avoid = avoid;
+        }
+
+        boolean accepts(int move) {
+            for (int avoided : avoid) {
+                if (avoided == move) {
+                    return false;
+                }
+            }
+            if (best.length == 0) {
+                return true;
+            }
+            for (int expected : best) {
+                if (expected == move) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private final Entry[] entries;
+    private final Search.Limits limits;
+    private final int hashMb;
+    private final AtomicInteger next = new AtomicInteger();
+    // Per position: move played, ms and nodes to solution (-1 if unsolved), depth reached, nodes searched.
+    private final int[] played;
+    private final long[] solveMillis;
+    private final long[] solveNodes;
+    private final int[] depths;
+    private final long[] nodes;
+
+    EpdSuite(Entry[] entries, Search.Limits limits, int hashMb) {
+        this.entries = entries;
+        this.limits = limits;
+        this.hashMb = hashMb;
+        played = new int[entries.length];
+        solveMillis = new long[entries.length];
+        solveNodes = new long[entries.length];
+        depths = new int[entries.length];
+        nodes = new long[entries.length];
+    }
+
+    private void worker() {
+        TranspositionTable table = new TranspositionTable(hashMb);
+        Network network = Network.shared();
+        int index;
+        while ((index = next.getAndIncrement()) < entries.length) {
+            Entry entry = entries[index];
+            Position position = new Position();
+            position.setFen(entry.fen);
+            position.setNetwork(network);
+            table.clear();
+            Search search = new Search(position, table, 0);
+            long[] solved = {-1, -1};
+            search.setListener((depth, score, elapsedMillis, pv) -> {
+                if (pv.length > 0 && entry.accepts(pv[0])) {
+                    if (solved[0] < 0) {
+                        solved[0] = elapsedMillis;
+                        solved[1] = search.nodes();
+                    }
+                } else {
+                    solved[0] = -1;
+                    solved[1] = -1;
+                }
+            });
+            long start = System.nanoTime();
+            Search.Result result = search.run(limits);
+            boolean correct = result.bestMove != Move.NONE && entry.accepts(result.bestMove);
+            // Solved only within the last, interrupted iteration: the whole search was needed.
+            if (correct && solved[0] < 0) {
+                solved[0] = (System.nanoTime() - start) / 1000000;
+                solved[1] = result.nodes;
+            }
+            played[index] = result.bestMove;
+            solveMillis[index] = correct ? solved[0] : -1;
+            solveNodes[index] = correct ? solved[1] : -1;
+            depths[index] = result.depth;
+            nodes[index] = result.nodes;
+        }
+    }
+
+    // FEN fields, then operations separated by semicolons: bm and am list SAN moves, id names the position.
+    static Entry parse(String line, int number) {
+        String[] fields = line.trim().split("\\s+", 5);
+        if (fields.length < 4) {
+            throw new IllegalArgumentException("line " + number + ": not an EPD record: " + line);
+        }
+        String fen = String.join(" ", fields[0], fields[1], fields[2], fields[3]);
+        Position position = new Position();
+        position.setFen(fen);
+        String id = "line " + number;
+        int[] best = new int[0];
+        int[] avoid = new int[0];
+        for (String operation : (fields.length > 4 ? fields[4] : "").split(";")) {
+            String[] parts = operation.trim().split("\\s+", 2);
+            if (parts.length < 2) {
+                continue;
+            }
+            switch (parts[0]) {
+                case "id": id = parts[1].replace("\"", "").trim(); break;
+                case "bm": best = moves(position, parts[1], number); break;
+                case "am": avoid = moves(position, parts[1], number); break;
+                default: break;
+            }
+        }
+        if (best.length == 0 && avoid.length == 0) {
+            throw new IllegalArgumentException("line " + number + ": no bm or am operation");
+        }
+        return new Entry(id, fen, best, avoid);
+    }
+
+    private static int[] moves(Position position, String list, int number) {
+        String[] names = list.trim().split("\\s+");
+        int[] moves = new int[names.length];
+        for (int k = 0; k < names.length; k++) {
+            int move = San.parse(position, names[k]);
+            if (move == Move.NONE) {
+                move = MoveGen.parseUci(position, names[k]);
+            }
+            if (move == Move.NONE) {
+                throw new IllegalArgumentException("line " + number + ": illegal move " + names[k]);
+            }
+            moves[k] = move;
+        }
+        return moves;
+    }
+
+    static List<Entry> read(String file) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        List<String> lines = Files.readAllLines(Paths.get(file), StandardCharsets.US_ASCII);
+        for (int k = 0; k < lines.size(); k++) {
+            String line = lines.get(k).trim();
+            if (!line.isEmpty() && !line.startsWith("#")) {
+                entries.add(parse(line, k + 1));
+            }
+        }
+        return entries;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        long millis = 0;
+        long nodeBudget = 0;
+        int hashMb = 16;
+        String outPath = null;
+        String jsonPath = null;
+        List<String> inputs = new ArrayList<>();
+        for (int k = 0; k < args.length; k++) {
+            switch (args[k]) {
+                case "--threads": threads = Integer.parseInt(args[++k]); break;
+                case "--movetime": millis = Long.parseLong(args[++k]); break;
+                case "--nodes": nodeBudget = Long.parseLong(args[++k]); break;
+                case "--hash": hashMb = Integer.parseInt(args[++k]); break;
+                case "--out": outPath = args[++k]; break;
+                case "--json": jsonPath = args[++k]; break;
+                default: inputs.add(args[k]); break;
+            }
+        }
+        if (inputs.isEmpty()) {
+            System.err.println("usage: java EpdSuite [--threads n] [--movetime ms] [--nodes n] [--hash mb]"
+                    + " [--out results.tsv] [--json summary.json] file.epd ...");
+            System.exit(2);
+        }
+        if (millis == 0 && nodeBudget == 0) {
+            millis = 1000;
+        }
+
+        List<Entry> entries = new ArrayList<>();
+        for (String input : inputs) {
+            entries.addAll(read(input));
+        }
+        // One tiny search first, so class loading and JMX registration are not charged to the first position.
+        Position warmup = new Position();
+        warmup.setFen(Position.START_FEN);
+        new Search(warmup, new TranspositionTable(1), 0).run(Search.Limits.depth(1));
+
+        EpdSuite suite = new EpdSuite(entries.toArray(new Entry[0]), new Search.Limits(Search.MAX_PLY - 1, millis, nodeBudget), hashMb);
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (int k = 0; k < threads; k++) {
+            pool.execute(suite::worker);
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        try (Writer out = new BufferedWriter(outPath == null
+                ? new OutputStreamWriter(System.out, StandardCharsets.US_ASCII)
+                : Files.newBufferedWriter(Paths.get(outPath), StandardCharsets.US_ASCII))) {
+            suite.writeResults(out);
+        }
+        String summary = suite.summary(seconds, threads, millis, nodeBudget);
+        if (jsonPath != null) {
+            Files.write(Paths.get(jsonPath), (summary + "\n").getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+
+    private void writeResults(Writer out) throws IOException {
+        Position position = new Position();
+        for (int k = 0; k < entries.length; k++) {
+            position.setFen(entries[k].fen);
+            String move = played[k] == Move.NONE ? "-" : San.format(position, played[k]);
+            out.write(entries[k].id + "\t" + (solveMillis[k] >= 0 ? "solved" : "failed") + "\t" + move + "\t"
+                    + solveMillis[k] + "\t" + solveNodes[k] + "\t" + depths[k] + "\t" + nodes[k] + "\n");
+        }
+    }
+
+    // Prints the summary to stderr and returns it as JSON, with numbers formatted the same in every locale.
+    private String summary(double seconds, int threads, long millis, long nodeBudget) {
+        int solved = 0;
+        long totalNodes = 0;
+        long[] times = new long[entries.length];
+        Telemetry.Histogram histogram = new Telemetry.Histogram();
+        for (int k = 0; k < entries.length; k++) {
+            totalNodes += nodes[k];
+            if (solveMillis[k] >= 0) {
+                times[solved++] = solveMillis[k];
+                histogram.record(solveMillis[k]);
+            }
+        }
+        times = Arrays.copyOf(times, solved);
+        Arrays.sort(times);
+        long[] buckets = histogram.counts();
+        int used = buckets.length;
+        while (used > 1 && buckets[used - 1] == 0) {
+            used--;
+        }
+        double rate = entries.length == 0 ? 0 : (double) solved / entries.length;
+        double nps = totalNodes / seconds;
+
+        System.err.printf(Locale.ROOT, "%d/%d solved (%.1f%%) with %s per position on %d threads%n", solved, entries.length,
+                rate * 100, nodeBudget > 0 ? nodeBudget + " nodes" : millis + " ms", threads);
+        System.err.printf(Locale.ROOT, "time to solution: p50 %d ms, p90 %d ms, max %d ms%n", percentile(times, 0.5),
+                percentile(times, 0.9), solved == 0 ? 0 : times[solved - 1]);
+        StringBuilder line = new StringBuilder("solved within:");
+        long seen = 0;
+        for (int k = 0; k < used; k++) {
+            seen += buckets[k];
+            line.append(' ').append(k == 0 ? "0" : "<" + (1L << k)).append(" ms ").append(seen);
+        }
+        System.err.println(line);
+        System.err.printf(Locale.ROOT, "%d nodes in %.2f s: %.0f nps (%.0f per thread)%n", totalNodes, seconds, nps, nps / threads);
+
+        StringBuilder json = new StringBuilder("{");
+        json.append("\"positions\":").append(entries.length);
+        json.append(",\"solved\":").append(solved);
+        json.append(",\"solveRate\":").append(String.format(Locale.ROOT, "%.4f", rate));
+        json.append(",\"movetimeMillis\":").append(millis);
+        json.append(",\"nodeBudget\":").append(nodeBudget);
+        json.append(",\"threads\":").append(threads);
+        json.append(",\"solveMillisP50\":").append(percentile(times, 0.5));
+        json.append(",\"solveMillisP90\":").append(percentile(times, 0.9));
+        json.append(",\"solveMillisMax\":").append(solved == 0 ? 0 : times[solved - 1]);
+        json.append(",\"solveMillisLog2Histogram\":").append(Arrays.toString(Arrays.copyOf(buckets, used)).replace(" ", ""));
+        json.append(",\"nodes\":").append(totalNodes);
+        json.append(",\"seconds\":").append(String.format(Locale.ROOT, "%.3f", seconds));
+        json.append(",\"nps\":").append(Math.round(nps));
+        json.append('}');
+        return json.toString();
+    }
+
+    // Nearest-rank percentile of sorted values, 0 when there are none.
+    private static long percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.max(0, (int) Math.ceil(fraction * sorted.length) - 1)];
+    }
+}
@@ -0,0 +1,149 @@
+import java.util.SplittableRandom;
+
+// Evaluation throughput. "eval" calls evaluate() on prepared positions; "make+eval" makes every legal
+// move, evaluates and unmakes it, the way a search spends its time, so the incremental updates are paid
+// for too. Covers the piece-square tables summed from scratch and kept incrementally, and a network of the
+// given width with the scalar kernel and, when the JVM has the incubator module, the Vector API one.
+// Incremental results are checked against a full recomputation along the way.
+//   java [--add-modules jdk.incubator.vector] EvalBench [positions] [hidden] [millisPerRun]
+final class EvalBench {
+    private static final int TABLES_SCRATCH = 0;
+    private static final int TABLES_INCREMENTAL = 1;
+    private static final int NETWORK = 2;
+
+    private static long sink;
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int hidden = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+        long millis = args.length > 2 ? Long.parseLong(args[2]) : 1000;
+        Position[] positions = randomPositions(count, 7);
+        int[][] moves = new int[count][];
+        for (int k = 0; k < count; k++) {
+            int[] buffer = new int[MoveGen.MAX_MOVES];
+            moves[k] = java.util.Arrays.copyOf(buffer, MoveGen.generate(positions[k], buffer, 0));
+        }
+
+        Network network = Network.random(hidden, 11);
+        System.out.printf("%d positions, network 768x%d, kernels: scalar%s%n", count, hidden,
+                Network.VECTOR == null ? " (start with --add-modules jdk.incubator.vector for the Vector API)"
+                        : ", " + Network.VECTOR.name());
+        System.out.printf("%-22s %14s %16s%n", "", "eval/s", "make+eval/s");
+        report("tables, from scratch", positions, moves, TABLES_SCRATCH, millis);
+        report("tables, incremental", positions, moves, TABLES_INCREMENTAL, millis);
+        report("network, scalar", withNetwork(positions, network.withKernel(Network.SCALAR)), moves, NETWORK, millis);
+        if (Network.VECTOR != null) {
+            report("network, " + Network.VECTOR.name(), withNetwork(positions, network.withKernel(Network.VECTOR)), moves, NETWORK, millis);
+        }
+        System.out.println("mismatches: " + verify(positions, moves, network));
+    }
+
+    // Positions from random games, a few dozen plies in so that they are spread over all game phases.
+    private static Position[] randomPositions(int count, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        Position[] positions = new Position[count];
+        int[] legal = new int[MoveGen.MAX_MOVES];
+        Position position = new Position();
+        for (int k = 0; k < count; ) {
+            position.setFen(Position.START_FEN);
+            int plies = random.nextInt(8, 120);
+            for (int ply = 0; ply < plies; ply++) {
+                int n = MoveGen.generate(position, legal, 0);
+                if (n == 0) {
+                    break;
+                }
+                position.makeMove(legal[random.nextInt(n)]);
+            }
+            if (MoveGen.generate(position, legal, 0) > 0) {
+                positions[k++] = position.copy();
+            }
+        }
+        return positions;
+    }
+
+    private static Position[] withNetwork(Position[] positions, Network network) {
+        Position[] copies = new Position[positions.length];
+        for (int k = 0; k < positions.length; k++) {
+            copies[k] = positions[k].copy();
+            copies[k].setNetwork(network);
+        }
+        return copies;
+    }
+
+    private static void report(String name, Position[] positions, int[][] moves, int mode, long millis) {
+        // One untimed pass per loop lets the JIT compile it first.
+        evalOnly(positions, mode, millis / 4);
+        makeAndEval(positions, moves, mode, millis / 4);
+        System.out.printf("%-22s %14.0f %16.0f%n", name, evalOnly(positions, mode, millis),
+                makeAndEval(positions, moves, mode, millis));
+    }
+
+    private static int evaluate(Position position, int mode) {
+        return mode == TABLES_SCRATCH ? Evaluation.evaluateFromScratch(position) : Evaluation.evaluate(position);
+    }
+
+    private static double evalOnly(Position[] positions, int mode, long millis) {
+        long evaluations = 0;
+        long start = System.nanoTime();
+        long deadline = start + millis * 1000000;
+        long now;
+        do {
+            for (Position position : positions) {
+                sink += evaluate(position, mode);
+            }
+            evaluations += positions.length;
+            now = System.nanoTime();
+        } while (now < deadline);
+        return evaluations * 1e9 / (now - start);
+    }
+
+    private static double makeAndEval(Position[] positions, int[][] moves, int mode, long millis) {
+        long evaluations = 0;
+        long start = System.nanoTime();
+        long deadline = start + millis * 1000000;
+        long now;
+        do {
+            for (int k = 0; k < positions.length; k++) {
+                Position position = positions[k];
+                for (int move : moves[k]) {
+                    position.makeMove(move);
+                    sink += evaluate(position, mode);
+                    position.unmakeMove(move);
+                }
+                evaluations += moves[k].length;
+            }
+            now = System.nanoTime();
+        } while (now < deadline);
+        return evaluations * 1e9 / (now - start);
+    }
+
+    // Incremental table scores against a full sum, incremental network scores against a fresh accumulator,
+    // and the two kernels against each other, after every move.
+    private static int verify(Position[] positions, int[][] moves, Network network) {
+        Network scalar = network.withKernel(Network.SCALAR);
+        Network vector = Network.VECTOR == null ? null : network.withKernel(Network.VECTOR);
+        int mismatches = 0;
+        for (int k = 0; k < positions.length; k++) {
+            Position tables = positions[k].copy();
+            Position scalarPosition = positions[k].copy();
+            scalarPosition.setNetwork(scalar);
+            Position vectorPosition = positions[k].copy();
+            vectorPosition.setNetwork(vector);
+            for (int move : moves[k]) {
+                tables.makeMove(move);
+                scalarPosition.makeMove(move);
+                vectorPosition.makeMove(move);
+                int expected = scalar.newAccumulator(scalarPosition).evaluate(scalarPosition.sideToMove);
+                if (Evaluation.evaluate(tables) != Evaluation.evaluateFromScratch(tables)
+                        || Evaluation.evaluate(scalarPosition) != expected
+                        || vector != null && Evaluation.evaluate(vectorPosition) != expected) {
+                    mismatches++;
+                }
+                tables.unmakeMove(move);
+                scalarPosition.unmakeMove(move);
+                vectorPosition.unmakeMove(move);
+            }
+        }
+        return mismatches;
+    }
+}
@@ -0,0 +1,153 @@
+// Material plus piece-square tables, tapered from middlegame to endgame values by the non-pawn material left,
+// scored in centipawns from the side to move's point of view. Position keeps both sums and the phase up to
+// date as pieces are put and removed, so evaluate() only blends them; with a network loaded it is used instead.
+final class Evaluation {
+    static final int[] PIECE_VALUES = {100, 320, 330, 500, 900, 0};
+    static final int[] ENDGAME_PIECE_VALUES = {120, 300, 320, 520, 950, 0};
+
+    // Phase weight per piece type; 24 with all minor and major pieces on the board.
+    static final int[] PHASE_WEIGHTS = {0, 1, 1, 2, 4, 0};
+    static final int MAX_PHASE = 24;
+
+    // Tables are written from White's side with a8 in the top-left corner, as they would appear on the board.
+    private static final int[][] TABLES = {
+        {
+             0,  0,  0,  0,  0,  0,  0,  0,
+            50, 50, 50, 50, 50, 50, 50, 50,
+            10, 10, 20, 30, 30, 20, 10, 10,
+             5,  5, 10, 25, 25, 10,  5,  5,
+             0,  0,  0, 20, 20,  0,  0,  0,
+             5, -5,-10,  0,  0,-10, -5,  5,
+             5, 10, 10,-20,-20, 10, 10,  5,
+             0,  0,  0,  0,  0,  0,  0,  0,
+        },
+        {
+            -50,-40,-30,-30,-30,-30,-40,-50,
+            -40,-20,  0,  0,  0,  0,-20,-40,
+            -30,  0, 10, 15, 15, 10,  0,-30,
+            -30,  5, 15, 20, 20, 15,  5,-30,
+            -30,  0, 15, 20, 20, 15,  0,-30,
+            -30,  5, 10, 15, 15, 10,  5,-30,
+            -40,-20,  0,  5,  5,  0,-20,-40,
+            -50,-40,-30,-30,-30,-30,-40,-50,
+        },
+        {
+            -20,-10,-10,-10,-10,-10,-10,-20,
+            -10,  0,  0,  0,  0,  0,  0,-10,
+            -10,  0,  5, 10, 10,  5,  0,-10,
+            -10,  5,  5, 10, 10,  5,  5,-10,
+            -10,  0, 10, 10, 10, 10,  0,-10,
+            -10, 10, 10, 10, 10, 10, 10,-10,
+            -10,  5,  0,  0,  0,  0,  5,-10,
+            -20,-10,-10,-10,-10,-10,-10,-20,
+        },
+        {
+              0,  0,  0,  0,  0,  0,  0,  0,
+              5, 10, 10, 10, 10, 10, 10,  5,
+             -5,  0,  0,  0,  0,  0,  0, -5,
+             -5,  0,  0,  0,  0,  0,  0, -5,
+             -5,  0,  0,  0,  0,  0,  0, -5,
+             -5,  0,  0,  0,  0,  0,  0, -5,
+             -5,  0,  0,  0,  0,  0,  0, -5,
+              0,  0,  0,  5,  5,  0,  0,  0,
+        },
+        {
+            -20,-10,-10, -5, -5,-10,-10,-20,
+            -10,  0,  0,  0,  0,  0,  0,-10,
+            -10,  0,  5,  5,  5,  5,  0,-10,
+             -5,  0,  5,  5,  5,  5,  0, -5,
+              0,  0,  5,  5,  5,  5,  0, -5,
+            -10,  5,  5,  5,  5,  5,  0,-10,
+            -10,  0,  5,  0,  0,  0,  0,-10,
+            -20,-10,-10, -5, -5,-10,-10,-20,
+        },
+        {
+            -30,-40,-40,-50,-50,-40,-40,-30,
+            -30,-40,-40,-50,-50,-40,-40,-30,
+            -30,-40,-40,-50,-50,-40,-40,-30,
+            -30,-40,-40,-50,-50,-40,-40,-30,
+            -20,-30,-30,-40,-40,-30,-30,-20,
+            -10,-20,-20,-20,-20,-20,-20,-10,
+             20, 20,  0,  0,  0,  0, 20, 20,
+             20, 30, 10,  0,  0, 10, 30, 20,
+        },
+    };
+
+    // In the endgame pawns gain with every step forward and the king belongs in the centre; the other
+    // pieces keep their middlegame tables.
+    private static final int[] ENDGAME_PAWN = {
+          0,  0,  0,  0,  0,  0,  0,  0,
+         80, 80, 80, 80, 80, 80, 80, 80,
+         50, 50, 50, 50, 50, 50, 50, 50,
+         30, 30, 30, 30, 30, 30, 30, 30,
+         15, 15, 15, 15, 15, 15, 15, 15,
+          5,  5,  5,  5,  5,  5,  5,  5,
+          0,  0,  0,  0,  0,  0,  0,  0,
+          0,  0,  0,  0,  0,  0,  0,  0,
+    };
+    private static final int[] ENDGAME_KING = {
+        -50,-40,-30,-20,-20,-30,-40,-50,
+        -30,-20,-10,  0,  0,-10,-20,-30,
+        -30,-10, 20, 30, 30, 20,-10,-30,
+        -30,-10, 30, 40, 40, 30,-10,-30,
+        -30,-10, 30, 40, 40, 30,-10,-30,
+        -30,-10, 20, 30, 30, 20,-10,-30,
+        -30,-30,  0,  0,  0,  0,-30,-30,
+        -50,-30,-30,-30,-30,-30,-30,-50,
+    };
+
+    // MIDGAME[piece][sq] and ENDGAME[piece][sq]: material plus placement for that piece code, from White's side.
+    static final int[][] MIDGAME = new int[12][64];
+    static final int[][] ENDGAME = new int[12][64];
+    static final int[] PHASE = new int[12];
+
+    static {
+        for (int type = Position.PAWN; type <= Position.KING; type++) {
+            int[] endgameTable = type == Position.PAWN ? ENDGAME_PAWN : type == Position.KING ? ENDGAME_KING : TABLES[type];
+            for (int sq = 0; sq < 64; sq++) {
+                int whiteIndex = (7 - (sq >>> 3)) * 8 + (sq & 7);
+                int blackIndex = (sq >>> 3) * 8 + (sq & 7);
+                int white = Position.piece(Position.WHITE, type);
+                int black = Position.piece(Position.BLACK, type);
+                MIDGAME[white][sq] = PIECE_VALUES[type] + TABLES[type][whiteIndex];
+                MIDGAME[black][sq] = -(PIECE_VALUES[type] + TABLES[type][blackIndex]);
+                ENDGAME[white][sq] = ENDGAME_PIECE_VALUES[type] + endgameTable[whiteIndex];
+                ENDGAME[black][sq] = -(ENDGAME_PIECE_VALUES[type] + endgameTable[blackIndex]);
+            }
+            PHASE[Position.piece(Position.WHITE, type)] = PHASE_WEIGHTS[type];
+            PHASE[Position.piece(Position.BLACK, type)] = PHASE_WEIGHTS[type];
+        }
+    }
+
+    private Evaluation() {
+    }
+
+    static int evaluate(Position pos) {
+        if (pos.accumulator != null) {
+            return pos.accumulator.evaluate(pos.sideToMove);
+        }
+        return taper(pos.midgameScore, pos.endgameScore, pos.phase, pos.sideToMove);
+    }
+
+    // The same score summed over the board, for checking the incremental one and for benchmarks.
+    static int evaluateFromScratch(Position pos) {
+        int midgame = 0;
+        int endgame = 0;
+        int phase = 0;
+        for (long b = pos.occupied; b != 0; b &= b - 1) {
+            int sq = Long.numberOfTrailingZeros(b);
+            int piece = pos.pieceAt(sq);
+            midgame += MIDGAME[piece][sq];
+            endgame += ENDGAME[piece][sq];
+            phase += PHASE[piece];
+        }
+        return taper(midgame, endgame, phase, pos.sideToMove);
+    }
+
+    private static int taper(int midgame, int endgame, int phase, int sideToMove) {
+        // Promotions can push the phase past its starting value.
+        int weight = Math.min(phase, MAX_PHASE);
+        int score = (midgame * weight + endgame * (MAX_PHASE - weight)) / MAX_PHASE;
+        return sideToMove == Position.WHITE ? score : -score;
+    }
+}
@@ -0,0 +1,381 @@
+// One game's state and click-driven rules, with no Swing dependency, so it can be hosted by the window,
+// a server session or a batch job alike.
+final class Game {
+    static final int PLAYING = 0;
+    static final int CHECKMATE = 1;
+    static final int STALEMATE = 2;
+    static final int REPETITION = 3;
+    static final int FIFTY_MOVES = 4;
+
+    // Outcomes of processClick, for the front end to react to.
+    static final int IGNORED = 0;
+    static final int SELECTED = 1;
+    static final int DESELECTED = 2;
+    static final int MOVED = 3;
+    static final int ILLEGAL = 4;
+
+    private final Position position = new Position();
+    private final Black blackPieces = new Black();
+    private final White whitePieces = new White();
+    private int selectedRow = -1;
+    private int selectedCol = -1;
+    private int status = PLAYING;
+
+    // Moves played from the starting position; those from historyCount up to historyEnd were taken back
+    // and can be replayed until a different move is played.
+    private int[] history = new int[256];
+    private int historyCount;
+    private int historyEnd;
+
+    // Legal moves of the current position, generated once per position (keyed by hash) rather than per click,
+    // and the destinations of the selected piece: legal ones, and ones its movement allows but that would
+    // leave the king attacked.
+    private final int[] legalMoves = new int[MoveGen.MAX_MOVES];
+    private int legalCount;
+    private long legalHash;
+    private boolean legalValid;
+    private long legalTargets;
+    private long blockedTargets;
+
+    Game() {
+        initializeBoard();
+    }
+
+    private void initializeBoard() {
+        position.clear();
+        blackPieces.initialize(position);
+        whitePieces.initialize(position);
+        position.setCastling(Position.ALL_CASTLING);
+    }
+
+    Position position() {
+        return position;
+    }
+
+    int currentPlayer() {
+        return position.sideToMove;
+    }
+
+    int selectedRow() {
+        return selectedRow;
+    }
+
+    int selectedCol() {
+        return selectedCol;
+    }
+
+    int status() {
+        return status;
+    }
+
+    boolean isOver() {
+        return status != PLAYING;
+    }
+
+    void reset() {
+        initializeBoard();
+        select(-1, -1);
+        legalValid = false;
+        historyCount = 0;
+        historyEnd = 0;
+        updateStatus();
+    }
+
+    void reset(String fen) {
+        position.setFen(fen);
+        select(-1, -1);
+        legalValid = false;
+        historyCount = 0;
+        historyEnd = 0;
+        updateStatus();
+    }
+
+    int processClick(int i, int j) {
+        if (isOver()) {
+            return IGNORED;
+        }
+
+        if (selectedRow == i && selectedCol == j) {
+            select(-1, -1);
+            return DESELECTED;
+        }
+
+        if (selectedRow == -1 || selectedCol == -1) {
+            int piece = position.pieceAt(i, j);
+            if (piece != Position.NO_PIECE && Position.colorOf(piece) == currentPlayer()) {
+                select(i, j);
+                return SELECTED;
+            }
+            return IGNORED;
+        }
+
+        int from = Position.square(selectedRow, selectedCol);
+        long to = 1L << Position.square(i, j);
+        long legal = legalTargets();
+        if (((legal | blockedTargets) & to) == 0) {
+            return IGNORED;
+        }
+
+        select(-1, -1);
+        // A move the piece could make but that leaves the king attacked is not in the legal list
+        if ((legal & to) == 0) {
+            return ILLEGAL;
+        }
+        playMove(find(from, Long.numberOfTrailingZeros(to), Position.QUEEN));
+        return MOVED;
+    }
+
+    // Squares the selected piece can legally move to, or 0 when nothing is selected.
+    long legalTargets() {
+        if (selectedRow != -1 && (!legalValid || legalHash != position.hash)) {
+            select(selectedRow, selectedCol);
+        }
+        return legalTargets;
+    }
+
+    private void select(int row, int col) {
+        selectedRow = row;
+        selectedCol = col;
+        legalTargets = 0L;
+        blockedTargets = 0L;
+        if (row == -1) {
+            return;
+        }
+        if (!legalValid || legalHash != position.hash) {
+            legalCount = MoveGen.generate(position, legalMoves, 0);
+            legalHash = position.hash;
+            legalValid = true;
+        }
+        int from = Position.square(row, col);
+        for (int k = 0; k < legalCount; k++) {
+            if (Move.from(legalMoves[k]) == from) {
+                legalTargets |= 1L << Move.to(legalMoves[k]);
+            }
+        }
+        // Where the piece moves by its own rules but would leave the king attacked. Only the squares its move mask
+        // reaches are put to isValidMove(), instead of all 64.
+        int piece = position.pieceAt(row, col);
+        if (piece != Position.NO_PIECE) {
+            long candidates = position.targets(Position.typeOf(piece), Position.colorOf(piece), from) & ~legalTargets;
+            for (; candidates != 0; candidates &= candidates - 1) {
+                int sq = Long.numberOfTrailingZeros(candidates);
+                if (isValidMove(Position.row(sq), Position.col(sq))) {
+                    blockedTargets |= 1L << sq;
+                }
+            }
+        }
+    }
+
+    private int find(int from, int to, int promotionType) {
+        for (int k = 0; k < legalCount; k++) {
+            int move = legalMoves[k];
+            if (Move.from(move) == from && Move.to(move) == to
+                    && (!Move.isPromotion(move) || Move.promotionType(move) == promotionType)) {
+                return move;
+            }
+        }
+        return Move.NONE;
+    }
+
+    // Plays a move known to be legal, e.g. from the engine or a network peer.
+    void playMove(int move) {
+        if (historyCount == history.length) {
+            history = java.util.Arrays.copyOf(history, historyCount * 2);
+        }
+        history[historyCount++] = move;
+        historyEnd = historyCount;
+        position.makeMove(move);
+        updateStatus();
+    }
+
+    boolean canUndo() {
+        return historyCount > 0;
+    }
+
+    boolean canRedo() {
+        return historyCount < historyEnd;
+    }
+
+    // Takes back the last move; it stays available to redo() until another move is played.
+    void undo() {
+        select(-1, -1);
+        position.unmakeMove(history[--historyCount]);
+        updateStatus();
+    }
+
+    // Replays the last move taken back and returns it.
+    int redo() {
+        select(-1, -1);
+        int move = history[historyCount++];
+        position.makeMove(move);
+        updateStatus();
+        return move;
+    }
+
+    // Parses and plays a UCI move string; false if it is not legal here.
+    boolean playUci(String uci) {
+        if (isOver()) {
+            return false;
+        }
+        int move = MoveGen.parseUci(position, uci);
+        if (move == Move.NONE) {
+            return false;
+        }
+        playMove(move);
+        return true;
+    }
+
+    boolean isValidMove(int i, int j) {
+        Telemetry.RuleCheckEvent event = new Telemetry.RuleCheckEvent();
+        event.begin();
+        return checked(event, Telemetry.VALID_MOVE, Position.square(i, j), validMove(i, j));
+    }
+
+    private boolean validMove(int i, int j) {
+        if (selectedRow == -1 || selectedCol == -1) {
+            return false;
+        }
+
+        int selectedPiece = position.pieceAt(selectedRow, selectedCol);
+        Player owner = Position.colorOf(selectedPiece) == Position.WHITE ? whitePieces : blackPieces;
+        switch (Position.typeOf(selectedPiece)) {
+            case Position.KNIGHT:
+                return owner.isValidKnightMove(i, j, selectedRow, selectedCol);
+            case Position.BISHOP:
+                return owner.isValidBishopMove(i, j, selectedRow, selectedCol);
+            case Position.PAWN:
+                return owner.isValidPawnMove(i, j, selectedRow, selectedCol);
+            case Position.ROOK:
+                return owner.isValidRookMove(i, j, selectedRow, selectedCol);
+            case Position.QUEEN:
+                return owner.isValidQueenMove(i, j, selectedRow, selectedCol);
+            case Position.KING:
+                return owner.isValidKingMove(i, j, selectedRow, selectedCol);
+            default:
+                return false;
+        }
+    }
+
+    boolean isKingInCheck() {
+        Telemetry.RuleCheckEvent event = new Telemetry.RuleCheckEvent();
+        event.begin();
+        int kingSquare = position.kingSquare(currentPlayer());
+        if (kingSquare == 64) {
+            throw new RuntimeException("King not found for player " + Position.COLOR_NAMES[currentPlayer()]);
+        }
+        return checked(event, Telemetry.KING_IN_CHECK, kingSquare, position.inCheck(currentPlayer()));
+    }
+
+    boolean canKingMoveToSafety() {
+        Telemetry.RuleCheckEvent event = new Telemetry.RuleCheckEvent();
+        event.begin();
+        int kingSquare = position.kingSquare(currentPlayer());
+        if (kingSquare == 64) {
+            throw new RuntimeException("King not found for player " + Position.COLOR_NAMES[currentPlayer()]);
+        }
+
+        // The king itself must not shield the squares behind it from a slider, so it is lifted off the board.
+        long attacked = position.attackMap(currentPlayer() ^ 1, position.occupied ^ (1L << kingSquare));
+        boolean safe = (Attacks.king(kingSquare) & ~position.colors[currentPlayer()] & ~attacked) != 0;
+        return checked(event, Telemetry.KING_SAFETY, kingSquare, safe);
+    }
+
+    // Counts the check and, while a recording wants it, commits its event; the event object never escapes
+    // otherwise, so without a recording it costs no allocation once compiled.
+    private static boolean checked(Telemetry.RuleCheckEvent event, int rule, int sq, boolean result) {
+        Telemetry.ruleChecked(rule);
+        if (event.shouldCommit()) {
+            event.check = Telemetry.RULE_NAMES[rule];
+            event.square = Position.squareName(sq);
+            event.result = result;
+            event.commit();
+        }
+        return result;
+    }
+
+    private void updateStatus() {
+        if (!MoveGen.hasLegalMove(position)) {
+            status = position.inCheck() ? CHECKMATE : STALEMATE;
+        } else if (position.halfmoveClock >= 100) {
+            status = FIFTY_MOVES;
+        } else if (position.repetitions() >= 3) {
+            status = REPETITION;
+        } else {
+            status = PLAYING;
+        }
+    }
+
+    private abstract class Player {
+        public abstract int getColor();
+
+        public abstract void initialize(Position position);
+
+        public boolean isValidKnightMove(int i, int j, int startRow, int startCol) {
+            return position.canMove(Position.KNIGHT, getColor(), Position.square(startRow, startCol), Position.square(i, j));
+        }
+
+        public boolean isValidBishopMove(int i, int j, int startRow, int startCol) {
+            return position.canMove(Position.BISHOP, getColor(), Position.square(startRow, startCol), Position.square(i, j));
+        }
+
+        public boolean isValidPawnMove(int i, int j, int startRow, int startCol) {
+            return position.canMove(Position.PAWN, getColor(), Position.square(startRow, startCol), Position.square(i, j));
+        }
+
+        public boolean isValidRookMove(int i, int j, int startRow, int startCol) {
+            return position.canMove(Position.ROOK, getColor(), Position.square(startRow, startCol), Position.square(i, j));
+        }
+
+        public boolean isValidQueenMove(int i, int j, int startRow, int startCol) {
+            return position.canMove(Position.QUEEN, getColor(), Position.square(startRow, startCol), Position.square(i, j));
+        }
+
+        public boolean isValidKingMove(int i, int j, int startRow, int startCol) {
+            return position.canMove(Position.KING, getColor(), Position.square(startRow, startCol), Position.square(i, j));
+        }
+    }
+
+    private class Black extends Player {
+        public int getColor() {
+            return Position.BLACK;
+        }
+
+        public void initialize(Position position) {
+            
+            for (int j = 0; j < 8; j++) {
+                position.put(Position.square(1, j), Position.BLACK, Position.PAWN);
+            }
+            
+            position.put(Position.square(0, 0), Position.BLACK, Position.ROOK);
+            position.put(Position.square(0, 1), Position.BLACK, Position.KNIGHT);
+            position.put(Position.square(0, 2), Position.BLACK, Position.BISHOP);
+            position.put(Position.square(0, 3), Position.BLACK, Position.QUEEN);
+            position.put(Position.square(0, 4), Position.BLACK, Position.KING);
+            position.put(Position.square(0, 5), Position.BLACK, Position.BISHOP);
+            position.put(Position.square(0, 6), Position.BLACK, Position.KNIGHT);
+            position.put(Position.square(0, 7), Position.BLACK, Position.ROOK);
+        }
+    }
+
+    private class White extends Player {
+        public int getColor() {
+            return Position.WHITE;
+        }
+
+        public void initialize(Position position) {
+            
+            for (int j = 0; j < 8; j++) {
+                position.put(Position.square(6, j), Position.WHITE, Position.PAWN);
+            }
+            
+            position.put(Position.square(7, 0), Position.WHITE, Position.ROOK);
+            position.put(Position.square(7, 1), Position.WHITE, Position.KNIGHT);
+            position.put(Position.square(7, 2), Position.WHITE, Position.BISHOP);
+            position.put(Position.square(7, 3), Position.WHITE, Position.QUEEN);
+            position.put(Position.square(7, 4), Position.WHITE, Position.KING);
+            position.put(Position.square(7, 5), Position.WHITE, Position.BISHOP);
+            position.put(Position.square(7, 6), Position.WHITE, Position.KNIGHT);
+            position.put(Position.square(7, 7), Position.WHITE, Position.ROOK);
+        }
+    }
+}
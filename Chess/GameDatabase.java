@@ -0,0 +1,555 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Binary game store with an index from position hash to the games that reach it.
+//   java GameDatabase import <db> file.pgn ...   append the legal games of PGN archives
+//   java GameDatabase find <db> <fen>            list the games that reach a position
+//   java GameDatabase show <db> <offset>         print one game as UCI moves
+//   java GameDatabase stats <db>
+// <db>.games is append-only: an 8-byte magic, then one record per game,
+//   u16 plies, u8 result, u8 FEN length, the starting FEN in ASCII (empty for the standard start), u16 moves
+// with every move in the engine's 16-bit from/to/flags encoding. A game is named by its record offset.
+// <db>.index is a sorted array of (position hash, game offset) pairs, 16 bytes each. The pairs of appended games
+// are queued, written out as sorted runs (<db>.index.run0, .run1 ...) whenever the queue fills, and merged with
+// the old index into a fresh one in a single pass on flush, so a long import writes its index once. Hashes come
+// from the fixed Zobrist seed, so an index is only valid for builds that share it. Both files are read through memory maps; an instance is not thread-safe.
+final class GameDatabase implements Closeable {
+    static final int UNKNOWN = 0;
+    static final int WHITE_WINS = 1;
+    static final int BLACK_WINS = 2;
+    static final int DRAW = 3;
+
+    static final String[] RESULT_NAMES = {"*", "1-0", "0-1", "1/2-1/2"};
+
+    static final int MAX_PLIES = 0xFFFF;
+
+    private static final long MAGIC = 0x4348455353444231L; // "CHESSDB1"
+    private static final int HEADER_BYTES = 8;
+    private static final int MAX_RECORD_BYTES = 4 + 255 + 2 * MAX_PLIES;
+    // Games regions overlap by one maximal record, so a record never straddles two maps.
+    private static final long REGION_BYTES = 1L << 30;
+    private static final int INDEX_REGION_SHIFT = 26;
+    private static final int PENDING_LIMIT = 1 << 22;
+
+    private final Path gamesPath;
+    private final Path indexPath;
+    private final FileChannel games;
+    private long size;
+    private long written;
+    private MappedByteBuffer[] regions = new MappedByteBuffer[0];
+    private long[] regionEnds = new long[0];
+    private MappedByteBuffer[] indexRegions = new MappedByteBuffer[0];
+    private long indexEntries;
+
+    private long[] pendingKeys = new long[1024];
+    private long[] pendingOffsets = new long[1024];
+    private int pendingCount;
+    private int runs;
+
+    private final Position position = new Position();
+    private final int[] legalMoves = new int[MoveGen.MAX_MOVES];
+    // Appended records collect here and reach the file in large writes.
+    private final ByteBuffer tail = ByteBuffer.allocateDirect((1 << 20) + MAX_RECORD_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+    GameDatabase(Path base) throws IOException {
+        gamesPath = Paths.get(base + ".games");
+        indexPath = Paths.get(base + ".index");
+        games = FileChannel.open(gamesPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        size = games.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        if (size == 0) {
+            header.putLong(MAGIC).flip();
+            games.write(header, 0);
+            size = HEADER_BYTES;
+        } else {
+            games.read(header, 0);
+            if (size < HEADER_BYTES || header.getLong(0) != MAGIC) {
+                games.close();
+                throw new IOException("not a game database: " + gamesPath);
+            }
+        }
+        written = size;
+        // Runs left by an import that never flushed; their games were not indexed then either.
+        int stale = 0;
+        while (Files.deleteIfExists(runPath(stale))) {
+            stale++;
+        }
+        mapIndex();
+    }
+
+    // The index key of a position: its hash, minus an en-passant square no pawn can capture on, so FENs
+    // written by tools that only record capturable en-passant squares still match.
+    static long key(Position position) {
+        long key = position.hash;
+        int ep = position.epSquare;
+        if (ep >= 0 && (Attacks.pawn(position.sideToMove ^ 1, ep) & position.pieces[position.sideToMove][Position.PAWN]) == 0) {
+            key ^= Zobrist.EN_PASSANT_FILE[ep & 7];
+        }
+        return key;
+    }
+
+    // Appends one game and returns its offset. The moves are replayed on a bare Position, each one checked
+    // against the legal moves on the way, and every position reached is queued for the index.
+    long append(String fen, int[] moves, int count, int result) throws IOException {
+        byte[] fenBytes = fen == null ? new byte[0] : fen.getBytes(StandardCharsets.US_ASCII);
+        if (count > MAX_PLIES || fenBytes.length > 255) {
+            throw new IllegalArgumentException("game too long to store");
+        }
+        long offset = size;
+        position.setFen(fen == null ? Position.START_FEN : fen);
+        int queued = pendingCount;
+        queue(key(position), offset);
+        if (tail.remaining() < MAX_RECORD_BYTES) {
+            writeTail();
+        }
+        int start = tail.position();
+        tail.putShort((short) count).put((byte) result).put((byte) fenBytes.length).put(fenBytes);
+        for (int k = 0; k < count; k++) {
+            int move = moves[k];
+            if (!isLegal(move)) {
+                pendingCount = queued;
+                tail.position(start);
+                throw new IllegalArgumentException("illegal move " + Move.toUci(move) + " at ply " + k);
+            }
+            position.makeMove(move);
+            queue(key(position), offset);
+            tail.putShort((short) move);
+        }
+        size += tail.position() - start;
+        if (pendingCount >= PENDING_LIMIT) {
+            spill();
+        }
+        return offset;
+    }
+
+    private void writeTail() throws IOException {
+        tail.flip();
+        while (tail.hasRemaining()) {
+            written += games.write(tail, written);
+        }
+        tail.clear();
+    }
+
+    private boolean isLegal(int move) {
+        int count = MoveGen.generate(position, legalMoves, 0);
+        for (int m = 0; m < count; m++) {
+            if (legalMoves[m] == move) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void queue(long key, long offset) {
+        if (pendingCount == pendingKeys.length) {
+            pendingKeys = Arrays.copyOf(pendingKeys, pendingCount * 2);
+            pendingOffsets = Arrays.copyOf(pendingOffsets, pendingCount * 2);
+        }
+        pendingKeys[pendingCount] = key;
+        pendingOffsets[pendingCount++] = offset;
+    }
+
+    private Path runPath(int n) {
+        return Paths.get(indexPath + ".run" + n);
+    }
+
+    // Sorts the queued pairs into the next run file.
+    private void spill() throws IOException {
+        if (pendingCount == 0) {
+            return;
+        }
+        sortPairs(pendingKeys, pendingOffsets, 0, pendingCount - 1);
+        try (FileChannel out = FileChannel.open(runPath(runs), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+            for (int k = 0; k < pendingCount; k++) {
+                if (buf.remaining() < 16) {
+                    writeFully(out, buf);
+                }
+                buf.putLong(pendingKeys[k]).putLong(pendingOffsets[k]);
+            }
+            writeFully(out, buf);
+        }
+        runs++;
+        pendingCount = 0;
+    }
+
+    // Makes appended games durable and visible to find: the games file is forced first, so the index never
+    // names a record that is not on disk, then the old index and every run are merged into a replacement file.
+    void flush() throws IOException {
+        writeTail();
+        if (pendingCount == 0 && runs == 0) {
+            return;
+        }
+        games.force(false);
+        spill();
+        PairReader[] sources = new PairReader[runs + 1];
+        int count = 0;
+        Path temp = Paths.get(indexPath + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (Files.exists(indexPath)) {
+                sources[count++] = new PairReader(indexPath);
+            }
+            for (int n = 0; n < runs; n++) {
+                sources[count++] = new PairReader(runPath(n));
+            }
+            ByteBuffer buf = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+            long lastKey = 0;
+            long lastOffset = -1;
+            while (true) {
+                // A run holds a few million pairs, so there are few enough of them to pick the least by a scan.
+                PairReader least = null;
+                for (int k = 0; k < count; k++) {
+                    if (!sources[k].done && (least == null || compare(sources[k].key, sources[k].offset, least.key, least.offset) < 0)) {
+                        least = sources[k];
+                    }
+                }
+                if (least == null) {
+                    break;
+                }
+                long key = least.key;
+                long offset = least.offset;
+                least.advance();
+                // A position repeated within one game yields the same pair more than once.
+                if (key == lastKey && offset == lastOffset) {
+                    continue;
+                }
+                lastKey = key;
+                lastOffset = offset;
+                if (buf.remaining() < 16) {
+                    writeFully(out, buf);
+                }
+                buf.putLong(key).putLong(offset);
+            }
+            writeFully(out, buf);
+            out.force(false);
+        } finally {
+            for (int k = 0; k < count; k++) {
+                sources[k].close();
+            }
+        }
+        indexRegions = new MappedByteBuffer[0];
+        indexEntries = 0;
+        Files.move(temp, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        for (int n = 0; n < runs; n++) {
+            Files.delete(runPath(n));
+        }
+        runs = 0;
+        mapIndex();
+    }
+
+    // A sorted file of (key, offset) pairs, read front to back during a merge.
+    private static final class PairReader implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buf = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        long key;
+        long offset;
+        boolean done;
+
+        PairReader(Path path) throws IOException {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+            buf.flip();
+            advance();
+        }
+
+        void advance() throws IOException {
+            if (buf.remaining() < 16) {
+                buf.compact();
+                while (buf.hasRemaining()) {
+                    if (channel.read(buf) < 0) {
+                        break;
+                    }
+                }
+                buf.flip();
+                if (buf.remaining() < 16) {
+                    done = true;
+                    return;
+                }
+            }
+            key = buf.getLong();
+            offset = buf.getLong();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer buf) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) {
+            out.write(buf);
+        }
+        buf.clear();
+    }
+
+    private static int compare(long key1, long offset1, long key2, long offset2) {
+        int c = Long.compareUnsigned(key1, key2);
+        return c != 0 ? c : Long.compare(offset1, offset2);
+    }
+
+    // Quicksort over the parallel key/offset arrays, so queued pairs never have to be boxed.
+    private static void sortPairs(long[] keys, long[] offsets, int lo, int hi) {
+        while (hi - lo > 16) {
+            int mid = (lo + hi) >>> 1;
+            long pivotKey = keys[mid];
+            long pivotOffset = offsets[mid];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (compare(keys[i], offsets[i], pivotKey, pivotOffset) < 0) {
+                    i++;
+                }
+                while (compare(keys[j], offsets[j], pivotKey, pivotOffset) > 0) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(keys, offsets, i++, j--);
+                }
+            }
+            // Recurse into the smaller half and loop on the larger to bound the stack depth.
+            if (j - lo < hi - i) {
+                sortPairs(keys, offsets, lo, j);
+                lo = i;
+            } else {
+                sortPairs(keys, offsets, i, hi);
+                hi = j;
+            }
+        }
+        for (int i = lo + 1; i <= hi; i++) {
+            for (int j = i; j > lo && compare(keys[j - 1], offsets[j - 1], keys[j], offsets[j]) > 0; j--) {
+                swap(keys, offsets, j - 1, j);
+            }
+        }
+    }
+
+    private static void swap(long[] keys, long[] offsets, int a, int b) {
+        long key = keys[a];
+        keys[a] = keys[b];
+        keys[b] = key;
+        long offset = offsets[a];
+        offsets[a] = offsets[b];
+        offsets[b] = offset;
+    }
+
+    private void mapIndex() throws IOException {
+        if (!Files.exists(indexPath)) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.READ)) {
+            long bytes = channel.size();
+            long regionBytes = 16L << INDEX_REGION_SHIFT;
+            MappedByteBuffer[] mapped = new MappedByteBuffer[(int) ((bytes + regionBytes - 1) / regionBytes)];
+            for (int r = 0; r < mapped.length; r++) {
+                long start = r * regionBytes;
+                mapped[r] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(regionBytes, bytes - start));
+                mapped[r].order(ByteOrder.LITTLE_ENDIAN);
+            }
+            indexRegions = mapped;
+            indexEntries = bytes / 16;
+        }
+    }
+
+    private long indexKey(long i) {
+        return indexRegions[(int) (i >>> INDEX_REGION_SHIFT)].getLong((int) (i & ((1 << INDEX_REGION_SHIFT) - 1)) << 4);
+    }
+
+    private long indexOffset(long i) {
+        return indexRegions[(int) (i >>> INDEX_REGION_SHIFT)].getLong(((int) (i & ((1 << INDEX_REGION_SHIFT) - 1)) << 4) + 8);
+    }
+
+    // Offsets of every flushed game that reaches the position with this key, in file order.
+    long[] find(long key) {
+        long lo = 0;
+        long hi = indexEntries;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (Long.compareUnsigned(indexKey(mid), key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        long end = lo;
+        while (end < indexEntries && indexKey(end) == key) {
+            end++;
+        }
+        long[] offsets = new long[(int) Math.min(end - lo, Integer.MAX_VALUE - 8)];
+        for (int k = 0; k < offsets.length; k++) {
+            offsets[k] = indexOffset(lo + k);
+        }
+        return offsets;
+    }
+
+    long[] find(Position position) {
+        return find(key(position));
+    }
+
+    long indexEntries() {
+        return indexEntries;
+    }
+
+    // The mapped region holding the record at offset, remapped when the file has grown past its end.
+    private MappedByteBuffer region(long offset) throws IOException {
+        if (offset < HEADER_BYTES || offset >= size) {
+            throw new IllegalArgumentException("no game at offset " + offset);
+        }
+        if (offset >= written) {
+            writeTail();
+        }
+        int r = (int) (offset / REGION_BYTES);
+        if (r >= regions.length) {
+            regions = Arrays.copyOf(regions, r + 1);
+            regionEnds = Arrays.copyOf(regionEnds, r + 1);
+        }
+        long start = r * REGION_BYTES;
+        long end = Math.min(written, start + REGION_BYTES + MAX_RECORD_BYTES);
+        if (regions[r] == null || regionEnds[r] < end) {
+            regions[r] = games.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            regions[r].order(ByteOrder.LITTLE_ENDIAN);
+            regionEnds[r] = end;
+        }
+        return regions[r];
+    }
+
+    int plies(long offset) throws IOException {
+        return region(offset).getShort((int) (offset % REGION_BYTES)) & 0xFFFF;
+    }
+
+    int result(long offset) throws IOException {
+        return region(offset).get((int) (offset % REGION_BYTES) + 2);
+    }
+
+    // The starting FEN, or null for a game from the standard position.
+    String startFen(long offset) throws IOException {
+        MappedByteBuffer buf = region(offset);
+        int p = (int) (offset % REGION_BYTES);
+        int length = buf.get(p + 3) & 0xFF;
+        if (length == 0) {
+            return null;
+        }
+        byte[] fen = new byte[length];
+        buf.get(p + 4, fen);
+        return new String(fen, StandardCharsets.US_ASCII);
+    }
+
+    // Copies the game's moves into the buffer and returns how many there are.
+    int moves(long offset, int[] into) throws IOException {
+        MappedByteBuffer buf = region(offset);
+        int p = (int) (offset % REGION_BYTES);
+        int count = buf.getShort(p) & 0xFFFF;
+        int first = p + 4 + (buf.get(p + 3) & 0xFF);
+        for (int k = 0; k < count; k++) {
+            into[k] = buf.getShort(first + 2 * k) & 0xFFFF;
+        }
+        return count;
+    }
+
+    // Replays a stored game into the given game, stopping after the given number of plies.
+    void replay(long offset, Game target, int plies) throws IOException {
+        String fen = startFen(offset);
+        if (fen == null) {
+            target.reset();
+        } else {
+            target.reset(fen);
+        }
+        MappedByteBuffer buf = region(offset);
+        int p = (int) (offset % REGION_BYTES);
+        int count = Math.min(plies, buf.getShort(p) & 0xFFFF);
+        int first = p + 4 + (buf.get(p + 3) & 0xFF);
+        for (int k = 0; k < count; k++) {
+            target.playMove(buf.getShort(first + 2 * k) & 0xFFFF);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        games.close();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: java GameDatabase import <db> file.pgn ... | find <db> <fen> | show <db> <offset> | stats <db>");
+            System.exit(2);
+        }
+        try (GameDatabase db = new GameDatabase(Paths.get(args[1]))) {
+            switch (args[0]) {
+                case "import": importPgn(db, Arrays.copyOfRange(args, 2, args.length)); break;
+                case "find": printMatches(db, String.join(" ", Arrays.copyOfRange(args, 2, args.length))); break;
+                case "show": printGame(db, Long.parseLong(args[2])); break;
+                case "stats":
+                    System.out.printf("%.1f MB of games, %d index entries%n", db.size / 1048576.0, db.indexEntries);
+                    break;
+                default:
+                    System.err.println("unknown command " + args[0]);
+                    System.exit(2);
+            }
+        }
+    }
+
+    private static void importPgn(GameDatabase db, String[] files) throws IOException {
+        long[] stored = new long[2];
+        long start = System.nanoTime();
+        for (String file : files) {
+            PgnBatch.replay(Paths.get(file), (fen, moves, count, legal, result) -> {
+                if (!legal || count > MAX_PLIES) {
+                    stored[1]++;
+                    return;
+                }
+                try {
+                    db.append(fen, moves, count, result);
+                    stored[0]++;
+                } catch (IOException e) {
+                    throw new java.io.UncheckedIOException(e);
+                }
+            });
+        }
+        db.flush();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d games stored, %d skipped as illegal, in %.2f s (%.0f games/s); %.1f MB of games, %d index entries%n",
+                stored[0], stored[1], seconds, stored[0] / seconds, db.size / 1048576.0, db.indexEntries);
+    }
+
+    private static void printMatches(GameDatabase db, String fen) throws IOException {
+        Position position = new Position();
+        position.setFen(fen);
+        long start = System.nanoTime();
+        long[] offsets = db.find(position);
+        double millis = (System.nanoTime() - start) / 1e6;
+        System.out.printf("%d games in %.3f ms%n", offsets.length, millis);
+        for (int k = 0; k < Math.min(offsets.length, 20); k++) {
+            System.out.println(offsets[k] + "\t" + RESULT_NAMES[db.result(offsets[k])] + "\t" + db.plies(offsets[k]) + " plies");
+        }
+        if (offsets.length > 20) {
+            System.out.println("...");
+        }
+    }
+
+    private static void printGame(GameDatabase db, long offset) throws IOException {
+        int[] moves = new int[db.plies(offset)];
+        int count = db.moves(offset, moves);
+        StringBuilder line = new StringBuilder();
+        String fen = db.startFen(offset);
+        if (fen != null) {
+            line.append("[FEN \"").append(fen).append("\"] ");
+        }
+        for (int k = 0; k < count; k++) {
+            line.append(Move.toUci(moves[k])).append(' ');
+        }
+        System.out.println(line.append(RESULT_NAMES[db.result(offset)]));
+    }
+}
@@ -0,0 +1,124 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Hosts many headless games over a line-based TCP protocol, one session (and one thread) per connection.
+//   java GameServer [port]
+// Commands, one per line:
+//   new [fen]     start a game                   -> ok <status>
+//   move <uci>    play a move                    -> ok <status> | illegal
+//   fen           current position               -> ok <fen>
+//   quit          close the session
+// where status is playing, checkmate, stalemate, repetition or fifty-moves.
+final class GameServer {
+    static final int DEFAULT_PORT = 7070;
+
+    private static final String[] STATUS_NAMES = {"playing", "checkmate", "stalemate", "repetition", "fifty-moves"};
+
+    private final AtomicInteger sessions = new AtomicInteger();
+    private final LongAdder games = new LongAdder();
+    private final LongAdder moves = new LongAdder();
+
+    // One virtual thread per task when the runtime has them (Java 21+), otherwise a cached platform pool.
+    static ExecutorService newSessionExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "game-session");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    void serve(int port) throws IOException {
+        ExecutorService executor = newSessionExecutor();
+        Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "game-server-stats");
+            thread.setDaemon(true);
+            return thread;
+        }).scheduleAtFixedRate(this::printStatistics, 10, 10, TimeUnit.SECONDS);
+
+        try (ServerSocket server = new ServerSocket(port, 4096)) {
+            System.out.println("Listening on port " + port);
+            while (true) {
+                Socket socket = server.accept();
+                executor.execute(() -> session(socket));
+            }
+        }
+    }
+
+    private void session(Socket socket) {
+        sessions.incrementAndGet();
+        Game game = new Game();
+        games.increment();
+        try (Socket s = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.US_ASCII));
+             Writer out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.US_ASCII))) {
+            s.setTcpNoDelay(true);
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith("move ")) {
+                    long start = System.nanoTime();
+                    if (game.playUci(line.substring(5).trim())) {
+                        moves.increment();
+                        reply(out, "ok " + STATUS_NAMES[game.status()]);
+                    } else {
+                        reply(out, "illegal");
+                    }
+                    Telemetry.serverMoved(System.nanoTime() - start);
+                } else if (line.startsWith("new")) {
+                    String fen = line.length() > 4 ? line.substring(4).trim() : Position.START_FEN;
+                    try {
+                        game.reset(fen);
+                        games.increment();
+                        reply(out, "ok " + STATUS_NAMES[game.status()]);
+                    } catch (RuntimeException e) {
+                        reply(out, "error bad fen");
+                    }
+                } else if (line.equals("fen")) {
+                    reply(out, "ok " + game.position().toFen());
+                } else if (line.equals("quit")) {
+                    break;
+                } else {
+                    reply(out, "error unknown command");
+                }
+            }
+        } catch (IOException e) {
+            // The peer went away; nothing to clean up beyond the socket.
+        } finally {
+            sessions.decrementAndGet();
+        }
+    }
+
+    private static void reply(Writer out, String line) throws IOException {
+        out.write(line);
+        out.write('\n');
+        out.flush();
+    }
+
+    private long lastMoves;
+
+    private void printStatistics() {
+        long total = moves.sum();
+        System.out.printf("sessions %d, games %d, moves %d (%.0f/s)%n",
+                sessions.get(), games.sum(), total, (total - lastMoves) / 10.0);
+        lastMoves = total;
+    }
+
+    public static void main(String[] args) throws IOException {
+        new GameServer().serve(args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT);
+    }
+}
@@ -0,0 +1,138 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Load generator for GameServer: every session plays random legal games and times each move round trip.
+//   java LoadClient [host] [port] [sessions] [gamesPerSession]
+final class LoadClient {
+    private static final int MAX_PLIES = 200;
+
+    private final String host;
+    private final int port;
+    private final LongAdder games = new LongAdder();
+    private final LongAdder illegal = new LongAdder();
+    private final AtomicLong failedSessions = new AtomicLong();
+    private final long[][] latencies;
+    private final int[] latencyCounts;
+
+    LoadClient(String host, int port, int sessions) {
+        this.host = host;
+        this.port = port;
+        this.latencies = new long[sessions][];
+        this.latencyCounts = new int[sessions];
+    }
+
+    private void session(int index, int gamesToPlay) {
+        long[] samples = new long[1024];
+        int count = 0;
+        int[] moves = new int[MoveGen.MAX_MOVES];
+        Position position = new Position();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        try (Socket socket = new Socket(host, port);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+             Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII))) {
+            socket.setTcpNoDelay(true);
+            for (int game = 0; game < gamesToPlay; game++) {
+                send(out, "new");
+                in.readLine();
+                position.setFen(Position.START_FEN);
+                for (int ply = 0; ply < MAX_PLIES; ply++) {
+                    int legal = MoveGen.generate(position, moves, 0);
+                    if (legal == 0) {
+                        break;
+                    }
+                    int move = moves[random.nextInt(legal)];
+                    long start = System.nanoTime();
+                    send(out, "move " + Move.toUci(move));
+                    String reply = in.readLine();
+                    long elapsed = System.nanoTime() - start;
+                    if (count == samples.length) {
+                        samples = Arrays.copyOf(samples, count * 2);
+                    }
+                    samples[count++] = elapsed;
+                    if (reply == null) {
+                        throw new IOException("server closed the connection");
+                    }
+                    if (!reply.startsWith("ok")) {
+                        illegal.increment();
+                        break;
+                    }
+                    position.makeMove(move);
+                    if (!reply.equals("ok playing")) {
+                        break;
+                    }
+                }
+                games.increment();
+            }
+            send(out, "quit");
+        } catch (IOException e) {
+            failedSessions.incrementAndGet();
+        }
+        latencies[index] = samples;
+        latencyCounts[index] = count;
+    }
+
+    private static void send(Writer out, String line) throws IOException {
+        out.write(line);
+        out.write('\n');
+        out.flush();
+    }
+
+    private void report(long elapsedNanos) {
+        int total = 0;
+        for (int count : latencyCounts) {
+            total += count;
+        }
+        long[] all = new long[total];
+        int offset = 0;
+        for (int k = 0; k < latencies.length; k++) {
+            if (latencies[k] != null) {
+                System.arraycopy(latencies[k], 0, all, offset, latencyCounts[k]);
+                offset += latencyCounts[k];
+            }
+        }
+        Arrays.sort(all);
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf("sessions %d, games %d, moves %d, illegal replies %d, failed sessions %d%n",
+                latencies.length, games.sum(), total, illegal.sum(), failedSessions.get());
+        System.out.printf("%.1f games/s, %.0f moves/s over %.1f s%n", games.sum() / seconds, total / seconds, seconds);
+        if (total > 0) {
+            System.out.printf("move latency us: p50 %.0f  p90 %.0f  p99 %.0f  p99.9 %.0f  max %.0f%n",
+                    percentile(all, 0.50), percentile(all, 0.90), percentile(all, 0.99), percentile(all, 0.999),
+                    all[total - 1] / 1e3);
+        }
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        return sorted[Math.min(sorted.length - 1, (int) (fraction * sorted.length))] / 1e3;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : GameServer.DEFAULT_PORT;
+        int sessions = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        int gamesPerSession = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+
+        LoadClient client = new LoadClient(host, port, sessions);
+        ExecutorService executor = GameServer.newSessionExecutor();
+        long start = System.nanoTime();
+        for (int k = 0; k < sessions; k++) {
+            int index = k;
+            executor.execute(() -> client.session(index, gamesPerSession));
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.DAYS);
+        client.report(System.nanoTime() - start);
+    }
+}
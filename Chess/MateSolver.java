@@ -0,0 +1,431 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Proves or refutes "the side to move mates within n moves" with depth-first proof-number search (df-pn).
+//   java MateSolver [--threads n] [--moves n] [--nodes n] [--mb n] puzzles.epd ...
+// One puzzle per line, FEN or EPD; an EPD "dm n" operation sets its n, --moves (default 5) the rest. Puzzles
+// are solved in parallel, each by its own solver. Output, one line per puzzle in file order:
+//   <id>\t<mate|none|unknown|error>\t<moves to mate or ->\t<expanded nodes>\t<ms>\t<proof line, SAN>
+// A mate is reported with its shortest length and main line. "none" is a proof that no mate within n exists;
+// "unknown" means the node or memory budget ran out first, "error" that the position is not a legal one.
+//
+// Every node has a proof number phi and a disproof number delta from the side to move's point of view: phi = 0
+// means the side to move wins (mates as attacker, or escapes as defender), delta = 0 that it loses. Stalemate
+// and running out of moves count as wins for the defender. Remaining plies are part of the node key, so a
+// repetition is a different node and the search graph has no cycles. Nodes live in a fixed-size store of
+// four-slot buckets; when it fills up, entries of cheap subtrees (by nodes expanded) are collected, solved
+// ones included, until half of it is free again. What is dropped from a proof is re-proved on demand while
+// its line is written out. Mates are tried one move longer at a time, and the store is kept between the
+// tries: with the remaining plies in the key their nodes do not collide, and the refutations of a shorter try
+// carry over to the subtrees of the next.
+final class MateSolver {
+    static final int MATE = 0;
+    static final int NO_MATE = 1;
+    static final int UNKNOWN = 2;
+    static final int ERROR = 3;
+    static final String[] STATUS_NAMES = {"mate", "none", "unknown", "error"};
+
+    private static final int INFINITY = 100000000;
+    private static final int MAX_PLIES = Search.MAX_PLY - 1;
+    private static final int BUCKET = 4;
+    private static final int BYTES_PER_ENTRY = 8 + 4 + 4 + 4 + 8;
+    private static final long DEPTH_KEY = 0x9E3779B97F4A7C15L;
+
+    // The answer for one puzzle.
+    static final class Proof {
+        final int status;
+        final int mateMoves;
+        final int[] line;
+        final long nodes;
+
+        Proof(int status, int mateMoves, int[] line, long nodes) {
+            this.status = status;
+            this.mateMoves = mateMoves;
+            this.line = line;
+            this.nodes = nodes;
+        }
+    }
+
+    // The node store: key (0 = empty), phi, delta, proving move of proved nodes, and the number of nodes
+    // expanded below the entry so far.
+    private final long[] keys;
+    private final int[] phis;
+    private final int[] deltas;
+    private final int[] moves;
+    private final long[] work;
+    private final int mask;
+    private int used;
+
+    // Per-ply scratch: legal moves and their children's current phi and delta.
+    private final int[] children = new int[MAX_PLIES * MoveGen.MAX_MOVES];
+    private final int[] childPhis = new int[MAX_PLIES * MoveGen.MAX_MOVES];
+    private final int[] childDeltas = new int[MAX_PLIES * MoveGen.MAX_MOVES];
+    private final int[] scratch = new int[MoveGen.MAX_MOVES];
+
+    private Position pos;
+    private int attacker;
+    private long expanded;
+    private long nodeLimit;
+    private boolean aborted;
+    // Values of the node mid() last returned from.
+    private int lastPhi;
+    private int lastDelta;
+
+    MateSolver(int megabytes) {
+        int entries = Integer.highestOneBit((int) Math.max(BUCKET, Math.min(1L << 30, ((long) megabytes << 20) / BYTES_PER_ENTRY)));
+        keys = new long[entries];
+        phis = new int[entries];
+        deltas = new int[entries];
+        moves = new int[entries];
+        work = new long[entries];
+        mask = entries - 1;
+    }
+
+    // Leaves position as it was. nodeLimit <= 0 means no limit but the store's size.
+    Proof solve(Position position, int mateMoves, long nodeLimit) {
+        pos = position;
+        attacker = position.sideToMove;
+        expanded = 0;
+        this.nodeLimit = nodeLimit > 0 ? nodeLimit : Long.MAX_VALUE;
+        aborted = false;
+        java.util.Arrays.fill(keys, 0L);
+        used = 0;
+
+        int plies = shortest(Math.min(2 * mateMoves - 1, MAX_PLIES - 1), 0);
+        if (plies < 0) {
+            return new Proof(aborted || lastDelta != 0 ? UNKNOWN : NO_MATE, 0, new int[0], expanded);
+        }
+        int[] line = proofLine(plies);
+        return new Proof(aborted ? UNKNOWN : MATE, (plies + 1) / 2, line, expanded);
+    }
+
+    // The fewest plies, at most maxPlies, in which the attacker to move mates, or -1 if none of the tries
+    // proved a mate.
+    private int shortest(int maxPlies, int ply) {
+        for (int plies = 1; plies <= maxPlies; plies += 2) {
+            mid(plies, ply, INFINITY, INFINITY);
+            if (lastPhi == 0) {
+                return plies;
+            }
+            if (aborted || lastDelta != 0) {
+                break;
+            }
+        }
+        return -1;
+    }
+
+    private void mid(int remaining, int ply, int thresholdPhi, int thresholdDelta) {
+        long key = key(remaining);
+        int slot = find(key);
+        long previousWork = slot >= 0 ? work[slot] : 0;
+        if (slot >= 0 && (phis[slot] >= thresholdPhi || deltas[slot] >= thresholdDelta)) {
+            lastPhi = phis[slot];
+            lastDelta = deltas[slot];
+            return;
+        }
+
+        int offset = ply * MoveGen.MAX_MOVES;
+        int end = MoveGen.generate(pos, children, offset);
+        if (end == offset || remaining == 0) {
+            terminal(end == offset, pos.sideToMove == attacker);
+            return;
+        }
+        if (++expanded > nodeLimit) {
+            aborted = true;
+        }
+        long startWork = expanded;
+        for (int k = offset; k < end; k++) {
+            evaluateChild(k, remaining - 1);
+        }
+
+        int phi;
+        int delta;
+        int best;
+        while (true) {
+            // phi is the smallest child delta, delta the sum of child phis; a sum only reaches infinity when
+            // one of its terms has, so that it still means a lost child.
+            phi = INFINITY;
+            delta = 0;
+            best = -1;
+            int secondDelta = INFINITY;
+            for (int k = offset; k < end; k++) {
+                delta = delta >= INFINITY || childPhis[k] >= INFINITY ? INFINITY : Math.min(delta + childPhis[k], INFINITY - 1);
+                if (childDeltas[k] < phi) {
+                    secondDelta = phi;
+                    phi = childDeltas[k];
+                    best = k;
+                } else if (childDeltas[k] < secondDelta) {
+                    secondDelta = childDeltas[k];
+                }
+            }
+            if (phi >= thresholdPhi || delta >= thresholdDelta || aborted) {
+                break;
+            }
+            int childPhi = childPhis[best];
+            int childThresholdPhi = thresholdDelta == INFINITY ? INFINITY : thresholdDelta - delta + childPhi;
+            int childThresholdDelta = Math.min(thresholdPhi, secondDelta == INFINITY ? INFINITY : secondDelta + 1);
+            pos.makeMove(children[best]);
+            mid(remaining - 1, ply + 1, childThresholdPhi, childThresholdDelta);
+            pos.unmakeMove(children[best]);
+            childPhis[best] = lastPhi;
+            childDeltas[best] = lastDelta;
+        }
+
+        store(key, phi, delta, phi == 0 ? children[best] : Move.NONE, previousWork + expanded - startWork + 1);
+        lastPhi = phi;
+        lastDelta = delta;
+    }
+
+    // A node without moves, or out of plies: mate is lost for the side to move, anything else is a win
+    // for the defender.
+    private void terminal(boolean noMoves, boolean attackerToMove) {
+        boolean mated = noMoves && pos.inCheck();
+        boolean moverWins = !mated && !attackerToMove;
+        lastPhi = moverWins ? 0 : INFINITY;
+        lastDelta = moverWins ? INFINITY : 0;
+    }
+
+    private void evaluateChild(int k, int remaining) {
+        pos.makeMove(children[k]);
+        int slot = find(key(remaining));
+        if (slot >= 0) {
+            childPhis[k] = phis[slot];
+            childDeltas[k] = deltas[slot];
+        } else {
+            int count = MoveGen.generate(pos, scratch, 0);
+            if (count == 0 || remaining == 0) {
+                terminal(count == 0, pos.sideToMove == attacker);
+                childPhis[k] = lastPhi;
+                childDeltas[k] = lastDelta;
+            } else {
+                // Mobility as the first estimate: every reply has to be answered.
+                childPhis[k] = 1;
+                childDeltas[k] = count;
+            }
+        }
+        pos.unmakeMove(children[k]);
+    }
+
+    // The main line of a proved mate in plies: the quickest mate for the attacker, the reply that holds out
+    // longest for the defender. Nodes the store has since dropped are proved again.
+    private int[] proofLine(int plies) {
+        int[] line = new int[plies];
+        int length = 0;
+        int[] replies = new int[MoveGen.MAX_MOVES];
+        int remaining = plies;
+        while (remaining > 0 && !aborted) {
+            int move;
+            if (pos.sideToMove == attacker) {
+                remaining = shortest(remaining, length);
+                int slot = remaining < 0 ? -1 : find(key(remaining));
+                if (slot < 0) {
+                    break;
+                }
+                move = moves[slot];
+            } else {
+                int count = MoveGen.generate(pos, replies, 0);
+                move = Move.NONE;
+                int longest = -1;
+                for (int k = 0; k < count && !aborted; k++) {
+                    pos.makeMove(replies[k]);
+                    int mate = shortest(remaining - 1, length + 1);
+                    pos.unmakeMove(replies[k]);
+                    if (mate > longest) {
+                        longest = mate;
+                        move = replies[k];
+                    }
+                }
+                if (longest < 0) {
+                    break;
+                }
+                remaining = longest + 1;
+            }
+            line[length++] = move;
+            pos.makeMove(move);
+            remaining--;
+        }
+        for (int k = length - 1; k >= 0; k--) {
+            pos.unmakeMove(line[k]);
+        }
+        return java.util.Arrays.copyOf(line, length);
+    }
+
+    private long key(int remaining) {
+        long key = pos.hash ^ remaining * DEPTH_KEY;
+        return key == 0 ? 1 : key;
+    }
+
+    private int find(long key) {
+        int bucket = (int) key & mask & -BUCKET;
+        for (int slot = bucket; slot < bucket + BUCKET; slot++) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private void store(long key, int phi, int delta, int move, long nodes) {
+        int slot = find(key);
+        if (slot < 0) {
+            if (used >= keys.length - keys.length / 8) {
+                collect();
+            }
+            // An empty slot, or else the one holding the least work.
+            int bucket = (int) key & mask & -BUCKET;
+            slot = bucket;
+            for (int k = bucket; k < bucket + BUCKET; k++) {
+                if (keys[k] == 0) {
+                    slot = k;
+                    break;
+                }
+                if (work[k] < work[slot]) {
+                    slot = k;
+                }
+            }
+            if (keys[slot] == 0) {
+                used++;
+            }
+        }
+        keys[slot] = key;
+        phis[slot] = phi;
+        deltas[slot] = delta;
+        moves[slot] = move;
+        work[slot] = nodes;
+    }
+
+    // Drops the entries of the cheapest subtrees, doubling the bar until half the store is free. Nodes on the
+    // current path are safe to drop: mid() keeps their values in locals and stores them again on the way out.
+    private void collect() {
+        for (long bar = 1; used > keys.length / 2; bar *= 2) {
+            for (int k = 0; k < keys.length; k++) {
+                if (keys[k] != 0 && work[k] <= bar) {
+                    keys[k] = 0;
+                    used--;
+                }
+            }
+        }
+    }
+
+    // One puzzle line: FEN fields, then EPD operations, of which "dm" and "id" are used.
+    static String[] parse(String line, int defaultMoves, int number) {
+        String[] fields = line.trim().split("\\s+", 5);
+        if (fields.length < 4) {
+            throw new IllegalArgumentException("line " + number + ": not a FEN or EPD record: " + line);
+        }
+        String fen = String.join(" ", fields[0], fields[1], fields[2], fields[3]);
+        String id = "line " + number;
+        String mateMoves = String.valueOf(defaultMoves);
+        String rest = fields.length > 4 ? fields[4] : "";
+        if (rest.matches("\\d+\\s+\\d+.*")) {
+            String[] counters = rest.split("\\s+", 3);
+            fen += " " + counters[0] + " " + counters[1];
+            rest = counters.length > 2 ? counters[2] : "";
+        }
+        for (String operation : rest.split(";")) {
+            String[] parts = operation.trim().split("\\s+", 2);
+            if (parts.length == 2 && parts[0].equals("dm")) {
+                mateMoves = parts[1].trim();
+            } else if (parts.length == 2 && parts[0].equals("id")) {
+                id = parts[1].replace("\"", "").trim();
+            }
+        }
+        return new String[] {id, fen, mateMoves};
+    }
+
+    // Move generation assumes one king a side and no king left to be taken. setFen() already refuses a missing
+    // king; the first test is a fallback for positions built some other way.
+    private static void check(Position position) {
+        if (position.kingSquare(Position.WHITE) == 64 || position.kingSquare(Position.BLACK) == 64) {
+            throw new IllegalArgumentException("a king is missing");
+        }
+        if (position.inCheck(position.sideToMove ^ 1)) {
+            throw new IllegalArgumentException("the side not to move is in check");
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int defaultMoves = 5;
+        long nodeLimit = 0;
+        int megabytes = 64;
+        List<String[]> puzzles = new ArrayList<>();
+        for (int k = 0; k < args.length; k++) {
+            switch (args[k]) {
+                case "--threads": threads = Integer.parseInt(args[++k]); break;
+                case "--moves": defaultMoves = Integer.parseInt(args[++k]); break;
+                case "--nodes": nodeLimit = Long.parseLong(args[++k]); break;
+                case "--mb": megabytes = Integer.parseInt(args[++k]); break;
+                default:
+                    List<String> lines = Files.readAllLines(Paths.get(args[k]), StandardCharsets.US_ASCII);
+                    for (int n = 0; n < lines.size(); n++) {
+                        String line = lines.get(n).trim();
+                        if (!line.isEmpty() && !line.startsWith("#")) {
+                            puzzles.add(parse(line, defaultMoves, n + 1));
+                        }
+                    }
+                    break;
+            }
+        }
+        if (puzzles.isEmpty()) {
+            System.err.println("usage: java MateSolver [--threads n] [--moves n] [--nodes n] [--mb n] puzzles.epd ...");
+            System.exit(2);
+        }
+
+        String[] results = new String[puzzles.size()];
+        long[] nodes = new long[puzzles.size()];
+        int[] statuses = new int[puzzles.size()];
+        AtomicInteger next = new AtomicInteger();
+        int solverMegabytes = megabytes;
+        long limit = nodeLimit;
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            pool.execute(() -> {
+                MateSolver solver = new MateSolver(solverMegabytes);
+                int index;
+                while ((index = next.getAndIncrement()) < results.length) {
+                    String[] puzzle = puzzles.get(index);
+                    try {
+                        Position position = new Position();
+                        position.setFen(puzzle[1]);
+                        check(position);
+                        long begin = System.nanoTime();
+                        Proof proof = solver.solve(position, Integer.parseInt(puzzle[2]), limit);
+                        long millis = (System.nanoTime() - begin) / 1000000;
+                        statuses[index] = proof.status;
+                        nodes[index] = proof.nodes;
+                        results[index] = puzzle[0] + "\t" + STATUS_NAMES[proof.status] + "\t"
+                                + (proof.status == MATE ? String.valueOf(proof.mateMoves) : "-") + "\t"
+                                + proof.nodes + "\t" + millis + "\t" + San.formatLine(position, proof.line);
+                    } catch (RuntimeException e) {
+                        statuses[index] = ERROR;
+                        results[index] = puzzle[0] + "\t" + STATUS_NAMES[ERROR] + "\t-\t0\t0\t" + e.getMessage();
+                    }
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        int[] counts = new int[STATUS_NAMES.length];
+        long totalNodes = 0;
+        for (int k = 0; k < results.length; k++) {
+            System.out.println(results[k]);
+            counts[statuses[k]]++;
+            totalNodes += nodes[k];
+        }
+        System.err.printf("%d puzzles: %d mate, %d none, %d unknown, %d error; %d nodes in %.2f s, %.0f nodes/s%n",
+                results.length, counts[MATE], counts[NO_MATE], counts[UNKNOWN], counts[ERROR], totalNodes, seconds,
+                totalNodes / seconds);
+    }
+}
@@ -0,0 +1,56 @@
+// A move packed into the low 16 bits of an int: from (6 bits), to (6 bits) and flags (4 bits).
+final class Move {
+    static final int NONE = 0;
+
+    static final int QUIET = 0;
+    static final int DOUBLE_PUSH = 1;
+    static final int KING_CASTLE = 2;
+    static final int QUEEN_CASTLE = 3;
+    static final int CAPTURE = 4;
+    static final int EN_PASSANT = 5;
+    static final int PROMOTION = 8;
+
+    private Move() {
+    }
+
+    static int of(int from, int to, int flags) {
+        return from | to << 6 | flags << 12;
+    }
+
+    static int from(int move) {
+        return move & 63;
+    }
+
+    static int to(int move) {
+        return move >>> 6 & 63;
+    }
+
+    static int flags(int move) {
+        return move >>> 12 & 15;
+    }
+
+    static boolean isCapture(int move) {
+        return (flags(move) & CAPTURE) != 0;
+    }
+
+    static boolean isPromotion(int move) {
+        return (flags(move) & PROMOTION) != 0;
+    }
+
+    static boolean isCastle(int move) {
+        int flags = flags(move);
+        return flags == KING_CASTLE || flags == QUEEN_CASTLE;
+    }
+
+    static int promotionType(int move) {
+        return Position.KNIGHT + (flags(move) & 3);
+    }
+
+    static String toUci(int move) {
+        if (move == NONE) {
+            return "0000";
+        }
+        String uci = Position.squareName(from(move)) + Position.squareName(to(move));
+        return isPromotion(move) ? uci + "nbrq".charAt(promotionType(move) - Position.KNIGHT) : uci;
+    }
+}
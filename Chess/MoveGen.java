@@ -0,0 +1,234 @@
+// Legal move generation straight from the bitboards: check evasions and pins are resolved with masks,
+// so only king steps and en passant need an extra attack query.
+final class MoveGen {
+    static final int MAX_MOVES = 256;
+
+    private static final long WHITE_KINGSIDE_PATH = 0x60L;
+    private static final long WHITE_QUEENSIDE_PATH = 0x0EL;
+    private static final long BLACK_KINGSIDE_PATH = WHITE_KINGSIDE_PATH << 56;
+    private static final long BLACK_QUEENSIDE_PATH = WHITE_QUEENSIDE_PATH << 56;
+
+    private MoveGen() {
+    }
+
+    // Writes every legal move of the side to move into moves starting at start and returns the new end index.
+    static int generate(Position pos, int[] moves, int start) {
+        int us = pos.sideToMove;
+        int them = us ^ 1;
+        long[] ours = pos.pieces[us];
+        long own = pos.colors[us];
+        long enemy = pos.colors[them];
+        long occupied = pos.occupied;
+        int king = pos.kingSquare(us);
+        long checkers = pos.attackersTo(king, them, occupied);
+        int n = start;
+
+        long withoutKing = occupied ^ (1L << king);
+        long kingTargets = Attacks.king(king) & ~own;
+        while (kingTargets != 0) {
+            int to = Long.numberOfTrailingZeros(kingTargets);
+            kingTargets &= kingTargets - 1;
+            if (pos.attackersTo(to, them, withoutKing) == 0) {
+                moves[n++] = Move.of(king, to, (enemy & 1L << to) != 0 ? Move.CAPTURE : Move.QUIET);
+            }
+        }
+        if ((checkers & (checkers - 1)) != 0) {
+            return n;
+        }
+
+        long evasions = checkers == 0 ? ~0L : checkers | Attacks.BETWEEN[king][Long.numberOfTrailingZeros(checkers)];
+        long pinned = pos.pinned(us);
+        long allowed = ~own & evasions;
+
+        if (checkers == 0) {
+            n = generateCastles(pos, us, moves, n);
+        }
+
+        long knights = ours[Position.KNIGHT] & ~pinned;
+        while (knights != 0) {
+            int from = Long.numberOfTrailingZeros(knights);
+            knights &= knights - 1;
+            n = addMoves(moves, n, from, Attacks.knight(from) & allowed, enemy);
+        }
+
+        long diagonals = ours[Position.BISHOP] | ours[Position.QUEEN];
+        while (diagonals != 0) {
+            int from = Long.numberOfTrailingZeros(diagonals);
+            diagonals &= diagonals - 1;
+            long targets = Attacks.bishop(from, occupied) & allowed;
+            if ((pinned & 1L << from) != 0) {
+                targets &= Attacks.LINE[king][from];
+            }
+            n = addMoves(moves, n, from, targets, enemy);
+        }
+
+        long orthogonals = ours[Position.ROOK] | ours[Position.QUEEN];
+        while (orthogonals != 0) {
+            int from = Long.numberOfTrailingZeros(orthogonals);
+            orthogonals &= orthogonals - 1;
+            long targets = Attacks.rook(from, occupied) & allowed;
+            if ((pinned & 1L << from) != 0) {
+                targets &= Attacks.LINE[king][from];
+            }
+            n = addMoves(moves, n, from, targets, enemy);
+        }
+
+        long pawns = ours[Position.PAWN];
+        long promotionRank = us == Position.WHITE ? Attacks.RANK_8 : Attacks.RANK_1;
+        while (pawns != 0) {
+            int from = Long.numberOfTrailingZeros(pawns);
+            pawns &= pawns - 1;
+            long targets = (pos.pawnPushes(us, from) | (Attacks.pawn(us, from) & enemy)) & evasions;
+            if ((pinned & 1L << from) != 0) {
+                targets &= Attacks.LINE[king][from];
+            }
+            while (targets != 0) {
+                int to = Long.numberOfTrailingZeros(targets);
+                targets &= targets - 1;
+                int capture = (enemy & 1L << to) != 0 ? Move.CAPTURE : Move.QUIET;
+                if ((promotionRank & 1L << to) != 0) {
+                    for (int flags = Move.PROMOTION + 3; flags >= Move.PROMOTION; flags--) {
+                        moves[n++] = Move.of(from, to, flags | capture);
+                    }
+                } else if (Math.abs(to - from) == 16) {
+                    moves[n++] = Move.of(from, to, Move.DOUBLE_PUSH);
+                } else {
+                    moves[n++] = Move.of(from, to, capture);
+                }
+            }
+            if (pos.epSquare >= 0 && (Attacks.pawn(us, from) & 1L << pos.epSquare) != 0
+                    && isLegalEnPassant(pos, us, king, from, pos.epSquare)) {
+                moves[n++] = Move.of(from, pos.epSquare, Move.EN_PASSANT);
+            }
+        }
+        return n;
+    }
+
+    // Same masks as generate, but returns as soon as any piece is found to have a legal destination.
+    static boolean hasLegalMove(Position pos) {
+        int us = pos.sideToMove;
+        int them = us ^ 1;
+        long[] ours = pos.pieces[us];
+        long occupied = pos.occupied;
+        int king = pos.kingSquare(us);
+
+        long escapes = Attacks.king(king) & ~pos.colors[us] & ~pos.attackMap(them, occupied ^ (1L << king));
+        if (escapes != 0) {
+            return true;
+        }
+        long checkers = pos.attackersTo(king, them, occupied);
+        if ((checkers & (checkers - 1)) != 0) {
+            return false;
+        }
+
+        long evasions = checkers == 0 ? ~0L : checkers | Attacks.BETWEEN[king][Long.numberOfTrailingZeros(checkers)];
+        long pinned = pos.pinned(us);
+        long allowed = ~pos.colors[us] & evasions;
+        long enemy = pos.colors[them];
+
+        for (long b = ours[Position.KNIGHT] & ~pinned; b != 0; b &= b - 1) {
+            if ((Attacks.knight(Long.numberOfTrailingZeros(b)) & allowed) != 0) {
+                return true;
+            }
+        }
+        for (long b = ours[Position.BISHOP] | ours[Position.QUEEN]; b != 0; b &= b - 1) {
+            int from = Long.numberOfTrailingZeros(b);
+            long targets = Attacks.bishop(from, occupied) & allowed;
+            if ((pinned & 1L << from) != 0) {
+                targets &= Attacks.LINE[king][from];
+            }
+            if (targets != 0) {
+                return true;
+            }
+        }
+        for (long b = ours[Position.ROOK] | ours[Position.QUEEN]; b != 0; b &= b - 1) {
+            int from = Long.numberOfTrailingZeros(b);
+            long targets = Attacks.rook(from, occupied) & allowed;
+            if ((pinned & 1L << from) != 0) {
+                targets &= Attacks.LINE[king][from];
+            }
+            if (targets != 0) {
+                return true;
+            }
+        }
+        for (long b = ours[Position.PAWN]; b != 0; b &= b - 1) {
+            int from = Long.numberOfTrailingZeros(b);
+            long targets = (pos.pawnPushes(us, from) | (Attacks.pawn(us, from) & enemy)) & evasions;
+            if ((pinned & 1L << from) != 0) {
+                targets &= Attacks.LINE[king][from];
+            }
+            if (targets != 0) {
+                return true;
+            }
+            if (pos.epSquare >= 0 && (Attacks.pawn(us, from) & 1L << pos.epSquare) != 0
+                    && isLegalEnPassant(pos, us, king, from, pos.epSquare)) {
+                return true;
+            }
+        }
+        // Castling needs a safe, empty square next to the king, which the king step above would already have found.
+        return false;
+    }
+
+    // Looks up the legal move matching a from/to pair (and promotion piece, if any), or Move.NONE.
+    static int find(Position pos, int from, int to, int promotionType) {
+        int[] moves = new int[MAX_MOVES];
+        int count = generate(pos, moves, 0);
+        for (int k = 0; k < count; k++) {
+            int move = moves[k];
+            if (Move.from(move) == from && Move.to(move) == to
+                    && (!Move.isPromotion(move) || Move.promotionType(move) == promotionType)) {
+                return move;
+            }
+        }
+        return Move.NONE;
+    }
+
+    static int parseUci(Position pos, String uci) {
+        if (uci.length() < 4) {
+            return Move.NONE;
+        }
+        int promotionType = uci.length() > 4 ? Position.KNIGHT + "nbrq".indexOf(uci.charAt(4)) : Position.QUEEN;
+        return find(pos, Position.parseSquare(uci.substring(0, 2)), Position.parseSquare(uci.substring(2, 4)), promotionType);
+    }
+
+    private static int addMoves(int[] moves, int n, int from, long targets, long enemy) {
+        while (targets != 0) {
+            int to = Long.numberOfTrailingZeros(targets);
+            targets &= targets - 1;
+            moves[n++] = Move.of(from, to, (enemy & 1L << to) != 0 ? Move.CAPTURE : Move.QUIET);
+        }
+        return n;
+    }
+
+    private static int generateCastles(Position pos, int us, int[] moves, int n) {
+        int them = us ^ 1;
+        long occupied = pos.occupied;
+        if (us == Position.WHITE) {
+            if ((pos.castling & Position.WHITE_KINGSIDE) != 0 && (occupied & WHITE_KINGSIDE_PATH) == 0
+                    && !pos.isAttacked(5, them) && !pos.isAttacked(6, them)) {
+                moves[n++] = Move.of(4, 6, Move.KING_CASTLE);
+            }
+            if ((pos.castling & Position.WHITE_QUEENSIDE) != 0 && (occupied & WHITE_QUEENSIDE_PATH) == 0
+                    && !pos.isAttacked(3, them) && !pos.isAttacked(2, them)) {
+                moves[n++] = Move.of(4, 2, Move.QUEEN_CASTLE);
+            }
+        } else {
+            if ((pos.castling & Position.BLACK_KINGSIDE) != 0 && (occupied & BLACK_KINGSIDE_PATH) == 0
+                    && !pos.isAttacked(61, them) && !pos.isAttacked(62, them)) {
+                moves[n++] = Move.of(60, 62, Move.KING_CASTLE);
+            }
+            if ((pos.castling & Position.BLACK_QUEENSIDE) != 0 && (occupied & BLACK_QUEENSIDE_PATH) == 0
+                    && !pos.isAttacked(59, them) && !pos.isAttacked(58, them)) {
+                moves[n++] = Move.of(60, 58, Move.QUEEN_CASTLE);
+            }
+        }
+        return n;
+    }
+
+    // En passant removes two pawns from one rank at once, so it is checked against the resulting occupancy.
+    private static boolean isLegalEnPassant(Position pos, int us, int king, int from, int to) {
+        int capturedSquare = to ^ 8;
+        long occupied = (pos.occupied ^ (1L << from) ^ (1L << capturedSquare)) | 1L << to;
+        return (pos.attackersTo(king, us ^ 1, occupied) & ~(1L << capturedSquare)) == 0;
+    }
+}
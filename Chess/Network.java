@@ -0,0 +1,221 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+// A small evaluation network in the NNUE style: 768 inputs (a piece of one colour on one square) feed
+// `hidden` units for each side's point of view. Those sums live in an Accumulator that Position updates as
+// pieces are put and removed, so an evaluation is only the clipped ReLU and one output dot product.
+// Weight file, little-endian 16-bit integers:
+//   feature weights [768][hidden], feature biases [hidden], output weights [2 * hidden], output bias
+// with features quantised by QA, output weights by QB and the output bias by QA * QB; SCALE turns the
+// output into centipawns. The loops run on the Vector API when NetworkVectorKernel (simd/) is on the class
+// path and the JVM has --add-modules jdk.incubator.vector, and on plain scalar loops otherwise.
+final class Network {
+    static final int INPUTS = 768;
+    static final int QA = 255;
+    static final int QB = 64;
+    static final int SCALE = 400;
+    // Outputs are clamped to this many centipawns, far from Search.MATE_BOUND, so that a network gone wild can
+    // neither pass for a mate nor overflow the table's 16-bit scores once search margins are added.
+    static final int MAX_SCORE = 10000;
+    // Keeps a clipped activation times an output weight within 16 bits, which the vector kernel relies on.
+    static final int MAX_OUTPUT_WEIGHT = 128;
+
+    interface Kernel {
+        // target[k] += weights[offset + k], for k < n
+        void add(short[] target, short[] weights, int offset, int n);
+
+        // target[k] -= weights[offset + k], for k < n
+        void subtract(short[] target, short[] weights, int offset, int n);
+
+        // The sum of clamp(values[k], 0, QA) * weights[offset + k], for k < n
+        int dot(short[] values, short[] weights, int offset, int n);
+
+        String name();
+    }
+
+    static final Kernel SCALAR = new ScalarKernel();
+    // Null when the Vector API kernel is not available in this JVM.
+    static final Kernel VECTOR = loadVectorKernel();
+
+    private static volatile Network shared;
+
+    final int hidden;
+    private final short[] featureWeights;
+    private final short[] featureBias;
+    private final short[] outputWeights;
+    private final int outputBias;
+    private final Kernel kernel;
+
+    private Network(int hidden, short[] featureWeights, short[] featureBias, short[] outputWeights, int outputBias,
+                    Kernel kernel) {
+        this.hidden = hidden;
+        this.featureWeights = featureWeights;
+        this.featureBias = featureBias;
+        this.outputWeights = outputWeights;
+        this.outputBias = outputBias;
+        this.kernel = kernel;
+    }
+
+    static Network load(Path path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+        int values = buffer.remaining() / 2;
+        int hidden = (values - 1) / (INPUTS + 3);
+        if (hidden == 0 || buffer.remaining() != 2 * ((INPUTS + 3) * hidden + 1)) {
+            throw new IOException("not a network file: " + path);
+        }
+        short[] featureWeights = new short[INPUTS * hidden];
+        short[] featureBias = new short[hidden];
+        short[] outputWeights = new short[2 * hidden];
+        buffer.asShortBuffer().get(featureWeights).get(featureBias).get(outputWeights);
+        int outputBias = buffer.getShort(2 * (values - 1));
+        for (short weight : outputWeights) {
+            if (Math.abs(weight) > MAX_OUTPUT_WEIGHT) {
+                throw new IOException("output weight " + weight + " out of range in " + path);
+            }
+        }
+        return new Network(hidden, featureWeights, featureBias, outputWeights, outputBias, defaultKernel());
+    }
+
+    // Random weights of realistic magnitude, for benchmarks; evaluating costs the same whatever they are.
+    static Network random(int hidden, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        short[] featureWeights = new short[INPUTS * hidden];
+        short[] featureBias = new short[hidden];
+        short[] outputWeights = new short[2 * hidden];
+        for (int k = 0; k < featureWeights.length; k++) {
+            featureWeights[k] = (short) random.nextInt(-32, 33);
+        }
+        for (int k = 0; k < hidden; k++) {
+            featureBias[k] = (short) random.nextInt(0, 64);
+        }
+        for (int k = 0; k < outputWeights.length; k++) {
+            outputWeights[k] = (short) random.nextInt(-64, 65);
+        }
+        return new Network(hidden, featureWeights, featureBias, outputWeights, 0, defaultKernel());
+    }
+
+    // The same weights evaluated with another kernel.
+    Network withKernel(Kernel kernel) {
+        return new Network(hidden, featureWeights, featureBias, outputWeights, outputBias, kernel);
+    }
+
+    Kernel kernel() {
+        return kernel;
+    }
+
+    static Kernel defaultKernel() {
+        return VECTOR != null ? VECTOR : SCALAR;
+    }
+
+    // The network every engine evaluates with, or null to use the piece-square tables.
+    static Network shared() {
+        return shared;
+    }
+
+    static synchronized void loadShared(Path path) throws IOException {
+        shared = path == null ? null : load(path);
+    }
+
+    private static Kernel loadVectorKernel() {
+        try {
+            return (Kernel) Class.forName("NetworkVectorKernel").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    // An accumulator holding the sums for the pieces of position.
+    Accumulator newAccumulator(Position position) {
+        Accumulator accumulator = new Accumulator(this);
+        for (long b = position.occupied; b != 0; b &= b - 1) {
+            int sq = Long.numberOfTrailingZeros(b);
+            accumulator.add(position.pieceAt(sq), sq);
+        }
+        return accumulator;
+    }
+
+    // Hidden sums from White's and from Black's point of view. Black sees the board with colours swapped
+    // and ranks mirrored, so one set of weights serves both.
+    static final class Accumulator {
+        private final Network network;
+        private final short[] white;
+        private final short[] black;
+
+        private Accumulator(Network network) {
+            this.network = network;
+            white = network.featureBias.clone();
+            black = network.featureBias.clone();
+        }
+
+        private Accumulator(Accumulator other) {
+            network = other.network;
+            white = other.white.clone();
+            black = other.black.clone();
+        }
+
+        Accumulator copy() {
+            return new Accumulator(this);
+        }
+
+        void reset() {
+            System.arraycopy(network.featureBias, 0, white, 0, network.hidden);
+            System.arraycopy(network.featureBias, 0, black, 0, network.hidden);
+        }
+
+        void add(int piece, int sq) {
+            int hidden = network.hidden;
+            network.kernel.add(white, network.featureWeights, (piece * 64 + sq) * hidden, hidden);
+            network.kernel.add(black, network.featureWeights, (mirrored(piece) * 64 + (sq ^ 56)) * hidden, hidden);
+        }
+
+        void remove(int piece, int sq) {
+            int hidden = network.hidden;
+            network.kernel.subtract(white, network.featureWeights, (piece * 64 + sq) * hidden, hidden);
+            network.kernel.subtract(black, network.featureWeights, (mirrored(piece) * 64 + (sq ^ 56)) * hidden, hidden);
+        }
+
+        // Centipawns from the side to move's point of view.
+        int evaluate(int sideToMove) {
+            int hidden = network.hidden;
+            short[] us = sideToMove == Position.WHITE ? white : black;
+            short[] them = sideToMove == Position.WHITE ? black : white;
+            long sum = network.kernel.dot(us, network.outputWeights, 0, hidden)
+                    + network.kernel.dot(them, network.outputWeights, hidden, hidden) + network.outputBias;
+            return (int) Math.max(-MAX_SCORE, Math.min(MAX_SCORE, sum * SCALE / (QA * QB)));
+        }
+
+        private static int mirrored(int piece) {
+            return piece < 6 ? piece + 6 : piece - 6;
+        }
+    }
+
+    private static final class ScalarKernel implements Kernel {
+        public void add(short[] target, short[] weights, int offset, int n) {
+            for (int k = 0; k < n; k++) {
+                target[k] += weights[offset + k];
+            }
+        }
+
+        public void subtract(short[] target, short[] weights, int offset, int n) {
+            for (int k = 0; k < n; k++) {
+                target[k] -= weights[offset + k];
+            }
+        }
+
+        public int dot(short[] values, short[] weights, int offset, int n) {
+            int sum = 0;
+            for (int k = 0; k < n; k++) {
+                sum += Math.min(Math.max(values[k], 0), QA) * weights[offset + k];
+            }
+            return sum;
+        }
+
+        public String name() {
+            return "scalar";
+        }
+    }
+}
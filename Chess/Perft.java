@@ -0,0 +1,113 @@
+// Move-generator regression gate.
+//   java Perft <depth> [fen]          node count
+//   java Perft divide <depth> [fen]   node count per root move
+//   java Perft bench                  standard suite: verifies counts and reports nodes per second
+final class Perft {
+    private static final int MAX_DEPTH = 64;
+
+    // {fen, depth, expected nodes} from the commonly used perft positions.
+    private static final String[][] SUITE = {
+        {Position.START_FEN, "5", "4865609"},
+        {"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1", "4", "4085603"},
+        {"8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1", "5", "674624"},
+        {"r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1", "4", "422333"},
+        {"rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8", "4", "2103487"},
+        {"r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10", "4", "3894594"},
+    };
+
+    private static final int WARMUP_ROUNDS = 2;
+    private static final int MEASURED_ROUNDS = 5;
+
+    private final Position position;
+    private final int[] moves = new int[MAX_DEPTH * MoveGen.MAX_MOVES];
+
+    Perft(Position position) {
+        this.position = position;
+    }
+
+    long perft(int depth) {
+        return depth <= 0 ? 1 : perft(depth, 0);
+    }
+
+    private long perft(int depth, int offset) {
+        int end = MoveGen.generate(position, moves, offset);
+        if (depth == 1) {
+            return end - offset;
+        }
+        long nodes = 0;
+        for (int k = offset; k < end; k++) {
+            position.makeMove(moves[k]);
+            nodes += perft(depth - 1, end);
+            position.unmakeMove(moves[k]);
+        }
+        return nodes;
+    }
+
+    long divide(int depth, java.io.PrintStream out) {
+        int end = MoveGen.generate(position, moves, 0);
+        long total = 0;
+        for (int k = 0; k < end; k++) {
+            position.makeMove(moves[k]);
+            long nodes = depth <= 1 ? 1 : perft(depth - 1, end);
+            position.unmakeMove(moves[k]);
+            out.println(Move.toUci(moves[k]) + ": " + nodes);
+            total += nodes;
+        }
+        out.println();
+        out.println("Moves: " + (end));
+        out.println("Nodes: " + total);
+        return total;
+    }
+
+    private static boolean bench() {
+        boolean ok = true;
+        long totalNodes = 0;
+        long totalNanos = 0;
+        for (String[] entry : SUITE) {
+            Position position = new Position();
+            position.setFen(entry[0]);
+            Perft perft = new Perft(position);
+            int depth = Integer.parseInt(entry[1]);
+            long expected = Long.parseLong(entry[2]);
+
+            for (int round = 0; round < WARMUP_ROUNDS; round++) {
+                perft.perft(depth);
+            }
+            long best = Long.MAX_VALUE;
+            long nodes = 0;
+            for (int round = 0; round < MEASURED_ROUNDS; round++) {
+                long start = System.nanoTime();
+                nodes = perft.perft(depth);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            totalNodes += nodes;
+            totalNanos += best;
+            boolean match = nodes == expected;
+            ok &= match;
+            System.out.printf("%-80s d%d %12d %s %10.0f nps%n", entry[0], depth, nodes,
+                    match ? "ok  " : "FAIL(" + expected + ")", nodes * 1e9 / best);
+        }
+        System.out.printf("total %d nodes, %.0f nps%n", totalNodes, totalNodes * 1e9 / totalNanos);
+        return ok;
+    }
+
+    public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("bench")) {
+            System.exit(bench() ? 0 : 1);
+        }
+        boolean divide = args.length > 0 && args[0].equals("divide");
+        int first = divide ? 1 : 0;
+        int depth = args.length > first ? Integer.parseInt(args[first]) : 5;
+        Position position = new Position();
+        position.setFen(args.length > first + 1 ? String.join(" ", java.util.Arrays.copyOfRange(args, first + 1, args.length))
+                                                : Position.START_FEN);
+        Perft perft = new Perft(position);
+        long start = System.nanoTime();
+        long nodes = divide ? perft.divide(depth, System.out) : perft.perft(depth);
+        long elapsed = System.nanoTime() - start;
+        if (!divide) {
+            System.out.println("Nodes: " + nodes);
+        }
+        System.out.printf("Time: %.3f s, %.0f nps%n", elapsed / 1e9, nodes * 1e9 / Math.max(1, elapsed));
+    }
+}
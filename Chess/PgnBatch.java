@@ -0,0 +1,347 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+// Validates PGN archives against the rules engine.
+//   java PgnBatch [--threads n] [--out results.tsv] [--summary] file.pgn ...
+// Each file is memory-mapped and cut into segments that start at an "[Event " tag, so segments can be
+// replayed independently on a fork-join pool. Segments are sized to give every worker a few of them, between
+// 1 and 64 MB, so small archives use all cores and large ones do not map more than they need at once. One line per game is written:
+//   <game>\t<legal|illegal>\t<plies played, or index of the illegal ply>\t<FEN reached>
+final class PgnBatch {
+    private static final long MIN_SEGMENT_BYTES = 1L << 20;
+    private static final long MAX_SEGMENT_BYTES = 64L << 20;
+    private static final int SEGMENTS_PER_THREAD = 4;
+    private static final int SEARCH_WINDOW = 1 << 20;
+    private static final byte[] EVENT_TAG = "\n[Event ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FEN_TAG = "[FEN \"".getBytes(StandardCharsets.US_ASCII);
+
+    // Results of one segment, kept in flat arrays until they can be numbered and written in order.
+    static final class Segment {
+        int games;
+        long moves;
+        long illegal;
+        int[] plies = new int[256];
+        boolean[] legal = new boolean[256];
+        String[] fens = new String[256];
+
+        void add(boolean isLegal, int ply, String fen) {
+            if (games == plies.length) {
+                plies = java.util.Arrays.copyOf(plies, games * 2);
+                legal = java.util.Arrays.copyOf(legal, games * 2);
+                fens = java.util.Arrays.copyOf(fens, games * 2);
+            }
+            plies[games] = ply;
+            legal[games] = isLegal;
+            fens[games] = fen;
+            games++;
+        }
+    }
+
+    // Receives each replayed game: its starting FEN (null for the standard start), the moves that were
+    // legal, whether the whole movetext was, and the result as one of the GameDatabase result codes.
+    interface GameSink {
+        void game(String fen, int[] moves, int count, boolean legal, int result);
+    }
+
+    // Per-task replay state: one game and one move buffer reused for every game in the segment.
+    private static final class Replayer {
+        private final Game game = new Game();
+        private final int[] moves = new int[MoveGen.MAX_MOVES];
+        private final boolean keepFens;
+        private final Segment segment = new Segment();
+        private final GameSink sink;
+        private int[] played = new int[512];
+
+        Replayer(boolean keepFens) {
+            this(keepFens, null);
+        }
+
+        Replayer(boolean keepFens, GameSink sink) {
+            this.keepFens = keepFens;
+            this.sink = sink;
+        }
+
+        Segment replay(ByteBuffer buf) {
+            int n = buf.limit();
+            int p = 0;
+            while (true) {
+                p = skipWhitespace(buf, p, n);
+                if (p >= n) {
+                    return segment;
+                }
+                String fen = null;
+                while (p < n && buf.get(p) == '[') {
+                    int lineEnd = indexOf(buf, (byte) '\n', p, n);
+                    if (startsWith(buf, p, lineEnd, FEN_TAG)) {
+                        int valueStart = p + FEN_TAG.length;
+                        int valueEnd = indexOf(buf, (byte) '"', valueStart, lineEnd);
+                        byte[] value = new byte[valueEnd - valueStart];
+                        buf.get(valueStart, value);
+                        fen = new String(value, StandardCharsets.US_ASCII);
+                    }
+                    p = skipWhitespace(buf, lineEnd + 1, n);
+                }
+                p = replayMovetext(buf, p, n, fen);
+            }
+        }
+
+        // Plays the movetext starting at p and returns the offset of the next game's tag section (or n).
+        private int replayMovetext(ByteBuffer buf, int p, int n, String fen) {
+            if (fen == null) {
+                game.reset();
+            } else {
+                game.reset(fen);
+            }
+            Position position = game.position();
+            int ply = 0;
+            int result = GameDatabase.UNKNOWN;
+            boolean legal = true;
+            while (p < n) {
+                int c = buf.get(p);
+                if (c == '[' && (p == 0 || buf.get(p - 1) == '\n')) {
+                    break;
+                }
+                if (c <= ' ') {
+                    p++;
+                } else if (c == '{') {
+                    p = indexOf(buf, (byte) '}', p, n) + 1;
+                } else if (c == ';' || c == '%') {
+                    p = indexOf(buf, (byte) '\n', p, n) + 1;
+                } else if (c == '(') {
+                    p = skipVariation(buf, p, n);
+                } else if (c == '.') {
+                    p++;
+                } else if (c == '$' || c == '*') {
+                    p = tokenEnd(buf, p + 1, n);
+                } else if (c >= '1' && c <= '9') {
+                    // Move number ("12." or "12...") or a result; either way nothing to play.
+                    while (p < n && buf.get(p) >= '0' && buf.get(p) <= '9') {
+                        p++;
+                    }
+                    if (p < n && (buf.get(p) == '-' || buf.get(p) == '/')) {
+                        result = buf.get(p) == '/' ? GameDatabase.DRAW : GameDatabase.WHITE_WINS;
+                        p = tokenEnd(buf, p, n);
+                    }
+                } else {
+                    int end = tokenEnd(buf, p, n);
+                    if (c == '0' && end - p == 3 && buf.get(p + 2) == '1') {
+                        result = GameDatabase.BLACK_WINS;
+                        p = end;
+                        continue;
+                    }
+                    if (legal) {
+                        int move = San.parse(position, buf, p, end, moves);
+                        if (move == Move.NONE) {
+                            legal = false;
+                        } else {
+                            game.playMove(move);
+                            if (ply == played.length) {
+                                played = java.util.Arrays.copyOf(played, ply * 2);
+                            }
+                            played[ply++] = move;
+                        }
+                    }
+                    p = end;
+                }
+            }
+            segment.moves += ply;
+            if (!legal) {
+                segment.illegal++;
+            }
+            segment.add(legal, ply, keepFens ? position.toFen() : null);
+            if (sink != null) {
+                sink.game(fen, played, ply, legal, result);
+            }
+            return p;
+        }
+    }
+
+    private static int tokenEnd(ByteBuffer buf, int p, int n) {
+        while (p < n) {
+            int c = buf.get(p);
+            if (c <= ' ' || c == '{' || c == '(' || c == ')' || c == ';') {
+                break;
+            }
+            p++;
+        }
+        return p;
+    }
+
+    private static int skipVariation(ByteBuffer buf, int p, int n) {
+        int depth = 0;
+        while (p < n) {
+            int c = buf.get(p);
+            if (c == '{') {
+                p = indexOf(buf, (byte) '}', p, n);
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth == 0) {
+                return p + 1;
+            }
+            p++;
+        }
+        return n;
+    }
+
+    private static int skipWhitespace(ByteBuffer buf, int p, int n) {
+        while (p < n && buf.get(p) <= ' ') {
+            p++;
+        }
+        return p;
+    }
+
+    private static int indexOf(ByteBuffer buf, byte b, int from, int to) {
+        for (int k = from; k < to; k++) {
+            if (buf.get(k) == b) {
+                return k;
+            }
+        }
+        return to;
+    }
+
+    private static boolean startsWith(ByteBuffer buf, int p, int end, byte[] prefix) {
+        if (end - p < prefix.length) {
+            return false;
+        }
+        for (int k = 0; k < prefix.length; k++) {
+            if (buf.get(p + k) != prefix[k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static long segmentBytes(long size, int threads) {
+        long target = size / ((long) threads * SEGMENTS_PER_THREAD);
+        return Math.max(MIN_SEGMENT_BYTES, Math.min(MAX_SEGMENT_BYTES, target));
+    }
+
+    // Segment boundaries: 0, then the first game start at or after every segmentBytes mark, then size. A
+    // segment has to fit one mapping, so a stretch of more than 2 GB without a game start is an error.
+    static long[] findCuts(FileChannel channel, long size, long segmentBytes) throws IOException {
+        List<Long> cuts = new ArrayList<>();
+        cuts.add(0L);
+        long mark = segmentBytes;
+        while (mark < size) {
+            long found = -1;
+            for (long window = mark; window < size && found < 0; window += SEARCH_WINDOW) {
+                long length = Math.min(size - window, SEARCH_WINDOW + EVENT_TAG.length);
+                MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, window, length);
+                for (int k = 0; k + EVENT_TAG.length <= length; k++) {
+                    if (startsWith(buf, k, (int) length, EVENT_TAG)) {
+                        found = window + k + 1;
+                        break;
+                    }
+                }
+            }
+            if (found < 0) {
+                break;
+            }
+            if (found > cuts.get(cuts.size() - 1)) {
+                cuts.add(found);
+            }
+            mark = Math.max(mark + segmentBytes, found + 1);
+        }
+        cuts.add(size);
+        long[] result = new long[cuts.size()];
+        for (int k = 0; k < result.length; k++) {
+            result[k] = cuts.get(k);
+            if (k > 0 && result[k] - result[k - 1] > Integer.MAX_VALUE) {
+                throw new IOException("no [Event tag within 2 GB after byte " + result[k - 1]);
+            }
+        }
+        return result;
+    }
+
+    // Replays every game of one file in order on the calling thread, handing each to the sink.
+    static Segment replay(Path input, GameSink sink) throws IOException {
+        Segment total = new Segment();
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+            long[] cuts = findCuts(channel, channel.size(), MAX_SEGMENT_BYTES);
+            for (int k = 0; k + 1 < cuts.length; k++) {
+                Segment segment = new Replayer(false, sink)
+                        .replay(channel.map(FileChannel.MapMode.READ_ONLY, cuts[k], cuts[k + 1] - cuts[k]));
+                total.games += segment.games;
+                total.moves += segment.moves;
+                total.illegal += segment.illegal;
+            }
+        }
+        return total;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path outPath = null;
+        boolean summaryOnly = false;
+        List<Path> inputs = new ArrayList<>();
+        for (int k = 0; k < args.length; k++) {
+            switch (args[k]) {
+                case "--threads": threads = Integer.parseInt(args[++k]); break;
+                case "--out": outPath = Paths.get(args[++k]); break;
+                case "--summary": summaryOnly = true; break;
+                default: inputs.add(Paths.get(args[k])); break;
+            }
+        }
+        if (inputs.isEmpty()) {
+            System.err.println("usage: java PgnBatch [--threads n] [--out results.tsv] [--summary] file.pgn ...");
+            System.exit(2);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        Writer out = new BufferedWriter(outPath == null
+                ? new OutputStreamWriter(System.out, StandardCharsets.US_ASCII)
+                : Files.newBufferedWriter(outPath, StandardCharsets.US_ASCII), 1 << 16);
+        long games = 0;
+        long moves = 0;
+        long illegal = 0;
+        long bytes = 0;
+        long start = System.nanoTime();
+        for (Path input : inputs) {
+            try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+                long size = channel.size();
+                bytes += size;
+                long[] cuts = findCuts(channel, size, segmentBytes(size, threads));
+                boolean keepFens = !summaryOnly;
+                List<ForkJoinTask<Segment>> tasks = new ArrayList<>();
+                for (int k = 0; k + 1 < cuts.length; k++) {
+                    long from = cuts[k];
+                    long length = cuts[k + 1] - cuts[k];
+                    tasks.add(pool.submit(() -> new Replayer(keepFens)
+                            .replay(channel.map(FileChannel.MapMode.READ_ONLY, from, length))));
+                }
+                // Segments are joined in file order, so game numbers match the archive even though replay is parallel.
+                for (ForkJoinTask<Segment> task : tasks) {
+                    Segment segment = task.join();
+                    for (int g = 0; g < segment.games; g++) {
+                        games++;
+                        if (!summaryOnly) {
+                            out.write(games + "\t" + (segment.legal[g] ? "legal" : "illegal") + "\t"
+                                    + segment.plies[g] + "\t" + segment.fens[g] + "\n");
+                        }
+                    }
+                    moves += segment.moves;
+                    illegal += segment.illegal;
+                }
+            }
+        }
+        out.flush();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.err.printf("%d games (%d illegal), %d moves, %.1f MB in %.2f s: %.0f games/s, %.0f moves/s%n",
+                games, illegal, moves, bytes / 1048576.0, seconds, games / seconds, moves / seconds);
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,244 @@
+import java.awt.AlphaComposite;
+import java.awt.Component;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.LongConsumer;
+import javax.imageio.ImageIO;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import javax.swing.Icon;
+
+// The twelve piece images as one atlas strip, indexed by piece code. The PNGs are read from the class path
+// (/images/*.png) and decoded in parallel off the event thread; load() starts that once per JVM and the
+// board paints without pieces until it completes. The decoded strip is kept at MASTER_SIZE pixels per
+// piece and every other size is derived from it once and cached, keyed by device pixels so that a
+// square size on a 2x display and twice that size on a 1x display share one strip.
+final class PieceSprites {
+    static final int MASTER_SIZE = 256;
+
+    private static final String[] NAMES = {
+        "white_pawn", "white_knight", "white_bishop", "white_rook", "white_queen", "white_king",
+        "black_pawn", "black_knight", "black_bishop", "black_rook", "black_queen", "black_king"
+    };
+    private static final int CACHED_SIZES = 8;
+
+    private static CompletableFuture<PieceSprites> loading;
+    private static volatile PieceSprites loaded;
+    private static volatile LongConsumer firstFrameListener;
+    private static volatile boolean firstFrameSeen;
+
+    private final BufferedImage master;
+    private final long decodeNanos;
+    private final Map<Integer, BufferedImage> scaled = new LinkedHashMap<Integer, BufferedImage>(16, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<Integer, BufferedImage> eldest) {
+            return size() > CACHED_SIZES;
+        }
+    };
+
+    private PieceSprites(BufferedImage master, long decodeNanos) {
+        this.master = master;
+        this.decodeNanos = decodeNanos;
+    }
+
+    // Starts decoding on the common pool the first time it is called; later calls return the same future.
+    static synchronized CompletableFuture<PieceSprites> load() {
+        if (loading == null) {
+            long start = System.nanoTime();
+            CompletableFuture<?>[] decodes = new CompletableFuture<?>[NAMES.length];
+            BufferedImage master = new BufferedImage(NAMES.length * MASTER_SIZE, MASTER_SIZE, BufferedImage.TYPE_INT_ARGB_PRE);
+            for (int piece = 0; piece < NAMES.length; piece++) {
+                int slot = piece;
+                decodes[piece] = CompletableFuture.runAsync(() -> decodeInto(master, slot));
+            }
+            loading = CompletableFuture.allOf(decodes).thenApply(ignored -> {
+                loaded = new PieceSprites(master, System.nanoTime() - start);
+                return loaded;
+            });
+        }
+        return loading;
+    }
+
+    // The sprites once loading has finished, otherwise null.
+    static PieceSprites loaded() {
+        return loaded;
+    }
+
+    // Blocks until the sprites are decoded, for tools that render off screen.
+    static PieceSprites await() throws IOException {
+        try {
+            return load().join();
+        } catch (java.util.concurrent.CompletionException e) {
+            throw e.getCause() instanceof UncheckedIOException
+                    ? ((UncheckedIOException) e.getCause()).getCause()
+                    : new IOException(e.getCause());
+        }
+    }
+
+    long decodeNanos() {
+        return decodeNanos;
+    }
+
+    // Called once, with milliseconds since the JVM started, the first time a piece reaches the screen.
+    static void setFirstFrameListener(LongConsumer listener) {
+        firstFrameListener = listener;
+    }
+
+    private static void decodeInto(BufferedImage master, int piece) {
+        String path = "/images/" + NAMES[piece] + ".png";
+        BufferedImage image;
+        try (InputStream stream = PieceSprites.class.getResourceAsStream(path)) {
+            if (stream == null) {
+                throw new IOException("piece image " + path + " not found on the class path");
+            }
+            // Decoding from memory keeps ImageIO from spilling the stream to a temporary file.
+            image = ImageIO.read(new MemoryCacheImageInputStream(new ByteArrayInputStream(stream.readAllBytes())));
+            if (image == null) {
+                throw new IOException("piece image " + path + " is not a readable PNG");
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        BufferedImage boxed = boxDownscale(image, Math.max(1, image.getHeight() / MASTER_SIZE));
+        BufferedImage sized = downscale(boxed, boxed.getHeight(), MASTER_SIZE, 1);
+        Graphics2D g = master.createGraphics();
+        g.setComposite(AlphaComposite.Src);
+        g.drawImage(sized, piece * MASTER_SIZE, 0, null);
+        g.dispose();
+    }
+
+    // Averages factor x factor blocks of the decoded samples straight into premultiplied ARGB. Reading
+    // 8-bit rasters directly treats grey PNGs as sRGB, as the AWT toolkit and browsers do, where drawing
+    // them would go through ImageIO's linear grey colour space: slow, and it washes the pieces out.
+    private static BufferedImage boxDownscale(BufferedImage image, int factor) {
+        int width = image.getWidth();
+        int outWidth = width / factor;
+        int outHeight = image.getHeight() / factor;
+        Raster raster = image.getRaster();
+        int bands = raster.getNumBands();
+        boolean direct = image.getColorModel() instanceof ComponentColorModel
+                && raster.getTransferType() == DataBuffer.TYPE_BYTE && bands <= 4;
+        int[] samples = new int[width * bands];
+        int[] row = new int[width];
+        long[] sums = new long[4 * outWidth];
+        int[] out = new int[outWidth * outHeight];
+        int area = factor * factor;
+        for (int oy = 0; oy < outHeight; oy++) {
+            java.util.Arrays.fill(sums, 0L);
+            for (int y = oy * factor; y < (oy + 1) * factor; y++) {
+                if (direct) {
+                    raster.getPixels(0, y, width, 1, samples);
+                    for (int x = 0; x < width; x++) {
+                        int s = x * bands;
+                        int alpha = bands == 2 || bands == 4 ? samples[s + bands - 1] : 255;
+                        int red = samples[s];
+                        int green = bands >= 3 ? samples[s + 1] : red;
+                        int blue = bands >= 3 ? samples[s + 2] : red;
+                        row[x] = alpha << 24 | red << 16 | green << 8 | blue;
+                    }
+                } else {
+                    image.getRGB(0, y, width, 1, row, 0, width);
+                }
+                for (int x = 0; x < outWidth * factor; x++) {
+                    int argb = row[x];
+                    int alpha = argb >>> 24;
+                    int k = 4 * (x / factor);
+                    sums[k] += alpha;
+                    sums[k + 1] += (argb >>> 16 & 255) * alpha;
+                    sums[k + 2] += (argb >>> 8 & 255) * alpha;
+                    sums[k + 3] += (argb & 255) * alpha;
+                }
+            }
+            for (int ox = 0; ox < outWidth; ox++) {
+                int k = 4 * ox;
+                out[oy * outWidth + ox] = (int) (sums[k] / area) << 24 | (int) (sums[k + 1] / (255 * area)) << 16
+                        | (int) (sums[k + 2] / (255 * area)) << 8 | (int) (sums[k + 3] / (255 * area));
+            }
+        }
+        BufferedImage boxed = new BufferedImage(outWidth, outHeight, BufferedImage.TYPE_INT_ARGB_PRE);
+        boxed.getRaster().setDataElements(0, 0, outWidth, outHeight, out);
+        return boxed;
+    }
+
+    // The strip at the given size in device pixels per piece.
+    BufferedImage atlas(int pixels) {
+        if (pixels == MASTER_SIZE) {
+            return master;
+        }
+        synchronized (scaled) {
+            BufferedImage atlas = scaled.get(pixels);
+            if (atlas == null) {
+                atlas = downscale(master, MASTER_SIZE, pixels, NAMES.length);
+                scaled.put(pixels, atlas);
+            }
+            return atlas;
+        }
+    }
+
+    // Halves with bilinear filtering while the source is at least twice the target, then takes one last
+    // bilinear step: as smooth as SCALE_SMOOTH at a fraction of its cost. The source holds count square
+    // cells side by side, which are scaled together; sprites have a transparent margin, so the filter never
+    // carries one piece into its neighbour.
+    private static BufferedImage downscale(BufferedImage source, int cell, int target, int count) {
+        BufferedImage current = source;
+        while (cell != target) {
+            int next = cell > target ? Math.max(target, cell / 2) : target;
+            BufferedImage step = new BufferedImage(next * count, next, BufferedImage.TYPE_INT_ARGB_PRE);
+            Graphics2D g = step.createGraphics();
+            g.setComposite(AlphaComposite.Src);
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, next > cell
+                    ? RenderingHints.VALUE_INTERPOLATION_BICUBIC : RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(current, 0, 0, next * count, next, 0, 0, current.getWidth(), current.getHeight(), null);
+            g.dispose();
+            current = step;
+            cell = next;
+        }
+        return current;
+    }
+
+    // Draws a piece into a size x size square, using the strip that maps one to one onto device pixels.
+    void draw(Graphics2D g, int piece, int x, int y, int size) {
+        int pixels = (int) Math.round(size * g.getTransform().getScaleX());
+        BufferedImage atlas = atlas(Math.max(1, pixels));
+        int cell = atlas.getHeight();
+        g.drawImage(atlas, x, y, x + size, y + size, piece * cell, 0, (piece + 1) * cell, cell, null);
+        if (!firstFrameSeen) {
+            firstFrameSeen = true;
+            LongConsumer listener = firstFrameListener;
+            if (listener != null) {
+                listener.accept(System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime());
+            }
+        }
+    }
+
+    // An icon for the button grid that paints from the atlas once it has loaded and is blank until then.
+    static Icon icon(int piece, int size) {
+        return new Icon() {
+            public void paintIcon(Component c, Graphics g, int x, int y) {
+                PieceSprites sprites = loaded;
+                if (sprites != null) {
+                    sprites.draw((Graphics2D) g, piece, x, y, size);
+                }
+            }
+
+            public int getIconWidth() {
+                return size;
+            }
+
+            public int getIconHeight() {
+                return size;
+            }
+        };
+    }
+}
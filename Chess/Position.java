@@ -0,0 +1,571 @@
+final class Position {
+    static final int WHITE = 0;
+    static final int BLACK = 1;
+
+    static final int PAWN = 0;
+    static final int KNIGHT = 1;
+    static final int BISHOP = 2;
+    static final int ROOK = 3;
+    static final int QUEEN = 4;
+    static final int KING = 5;
+
+    static final int NO_PIECE = -1;
+
+    static final String[] COLOR_NAMES = {"white", "black"};
+
+    static final int WHITE_KINGSIDE = 1;
+    static final int WHITE_QUEENSIDE = 2;
+    static final int BLACK_KINGSIDE = 4;
+    static final int BLACK_QUEENSIDE = 8;
+    static final int ALL_CASTLING = 15;
+    // Home square of the rook behind each castling right, in KQkq order.
+    private static final int[] CASTLING_ROOKS = {7, 0, 63, 56};
+
+    static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    private static final String PIECE_CHARS = "PNBRQKpnbrqk";
+    private static final int[] CASTLING_MASK = new int[64];
+
+    static {
+        java.util.Arrays.fill(CASTLING_MASK, ALL_CASTLING);
+        CASTLING_MASK[0] &= ~WHITE_QUEENSIDE;
+        CASTLING_MASK[4] &= ~(WHITE_KINGSIDE | WHITE_QUEENSIDE);
+        CASTLING_MASK[7] &= ~WHITE_KINGSIDE;
+        CASTLING_MASK[56] &= ~BLACK_QUEENSIDE;
+        CASTLING_MASK[60] &= ~(BLACK_KINGSIDE | BLACK_QUEENSIDE);
+        CASTLING_MASK[63] &= ~BLACK_KINGSIDE;
+    }
+
+    final long[][] pieces = new long[2][6];
+    final long[] colors = new long[2];
+    long occupied;
+    private final byte[] mailbox = new byte[64];
+    private final int[] kingSquares = new int[2];
+
+    // Squares attacked by each side; rebuilt from the bitboards at most once per position, on first use after a move.
+    private final long[] attackMaps = new long[2];
+    private int validAttackMaps;
+
+    int sideToMove;
+    int castling;
+    int epSquare;
+    int halfmoveClock;
+    int fullmoveNumber;
+    long hash;
+
+    // Evaluation terms kept up to date by put and remove: tapered piece-square sums from White's side, the
+    // game phase, and the network's accumulator when one is attached.
+    int midgameScore;
+    int endgameScore;
+    int phase;
+    Network.Accumulator accumulator;
+
+    // One packed state word per played move: captured piece, castling rights, en-passant square, halfmove clock,
+    // and the hash before the move. The stacks start small and double when full; copy() sizes them for a search
+    // from the copied position, so the searching threads never have to grow them.
+    private static final int UNDO_CAPACITY = 64;
+    private int[] undo = new int[UNDO_CAPACITY];
+    private long[] hashes = new long[UNDO_CAPACITY];
+    private int ply;
+
+    Position() {
+        clear();
+    }
+
+    void clear() {
+        for (int color = WHITE; color <= BLACK; color++) {
+            for (int type = PAWN; type <= KING; type++) {
+                pieces[color][type] = 0L;
+            }
+            colors[color] = 0L;
+        }
+        occupied = 0L;
+        java.util.Arrays.fill(mailbox, (byte) NO_PIECE);
+        kingSquares[WHITE] = 64;
+        kingSquares[BLACK] = 64;
+        validAttackMaps = 0;
+        sideToMove = WHITE;
+        castling = 0;
+        epSquare = -1;
+        halfmoveClock = 0;
+        fullmoveNumber = 1;
+        hash = 0L;
+        ply = 0;
+        midgameScore = 0;
+        endgameScore = 0;
+        phase = 0;
+        if (accumulator != null) {
+            accumulator.reset();
+        }
+    }
+
+    // Evaluates with the network from now on, or with the piece-square tables again when network is null.
+    void setNetwork(Network network) {
+        accumulator = network == null ? null : network.newAccumulator(this);
+    }
+
+    // Rejects a board without exactly one king a side before touching the position, and drops castling rights
+    // whose king or rook is not on its home square, so move generation never castles with a missing piece.
+    void setFen(String fen) {
+        String[] fields = fen.trim().split("\\s+");
+        long whiteKings = fields[0].chars().filter(c -> c == 'K').count();
+        long blackKings = fields[0].chars().filter(c -> c == 'k').count();
+        if (whiteKings != 1 || blackKings != 1) {
+            throw new IllegalArgumentException("FEN needs one king a side: " + fen);
+        }
+        clear();
+        int sq = 56;
+        for (int k = 0; k < fields[0].length(); k++) {
+            char c = fields[0].charAt(k);
+            if (c == '/') {
+                sq -= 16;
+            } else if (c >= '1' && c <= '8') {
+                sq += c - '0';
+            } else {
+                int piece = PIECE_CHARS.indexOf(c);
+                if (piece < 0) {
+                    throw new IllegalArgumentException("Bad FEN piece '" + c + "': " + fen);
+                }
+                put(sq++, piece);
+            }
+        }
+        sideToMove = fields.length > 1 && fields[1].equals("b") ? BLACK : WHITE;
+        if (fields.length > 2) {
+            for (int k = 0; k < fields[2].length(); k++) {
+                int right = "KQkq".indexOf(fields[2].charAt(k));
+                if (right >= 0) {
+                    castling |= 1 << right;
+                }
+            }
+            for (int right = 0; right < 4; right++) {
+                int color = right < 2 ? WHITE : BLACK;
+                if (pieceAt(color == WHITE ? 4 : 60) != piece(color, KING)
+                        || pieceAt(CASTLING_ROOKS[right]) != piece(color, ROOK)) {
+                    castling &= ~(1 << right);
+                }
+            }
+        }
+        epSquare = fields.length > 3 && !fields[3].equals("-") ? parseSquare(fields[3]) : -1;
+        halfmoveClock = fields.length > 4 ? Integer.parseInt(fields[4]) : 0;
+        fullmoveNumber = fields.length > 5 ? Integer.parseInt(fields[5]) : 1;
+        hash = computeHash();
+    }
+
+    void setCastling(int rights) {
+        hash ^= Zobrist.CASTLING[castling] ^ Zobrist.CASTLING[rights];
+        castling = rights;
+    }
+
+    long computeHash() {
+        long key = 0L;
+        for (int sq = 0; sq < 64; sq++) {
+            if (mailbox[sq] != NO_PIECE) {
+                key ^= Zobrist.PIECE_SQUARE[mailbox[sq]][sq];
+            }
+        }
+        key ^= Zobrist.CASTLING[castling];
+        if (epSquare >= 0) {
+            key ^= Zobrist.EN_PASSANT_FILE[epSquare & 7];
+        }
+        return sideToMove == BLACK ? key ^ Zobrist.SIDE_TO_MOVE : key;
+    }
+
+    String toFen() {
+        StringBuilder fen = new StringBuilder(90);
+        for (int rank = 7; rank >= 0; rank--) {
+            int empty = 0;
+            for (int file = 0; file < 8; file++) {
+                int piece = mailbox[rank << 3 | file];
+                if (piece == NO_PIECE) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) {
+                    fen.append(empty);
+                    empty = 0;
+                }
+                fen.append(PIECE_CHARS.charAt(piece));
+            }
+            if (empty > 0) {
+                fen.append(empty);
+            }
+            if (rank > 0) {
+                fen.append('/');
+            }
+        }
+        fen.append(sideToMove == WHITE ? " w " : " b ");
+        if (castling == 0) {
+            fen.append('-');
+        }
+        for (int right = 0; right < 4; right++) {
+            if ((castling & 1 << right) != 0) {
+                fen.append("KQkq".charAt(right));
+            }
+        }
+        fen.append(' ').append(epSquare < 0 ? "-" : squareName(epSquare));
+        return fen.append(' ').append(halfmoveClock).append(' ').append(fullmoveNumber).toString();
+    }
+
+    static String squareName(int sq) {
+        return String.valueOf((char) ('a' + (sq & 7))) + (char) ('1' + (sq >>> 3));
+    }
+
+    static int parseSquare(String name) {
+        return (name.charAt(1) - '1') << 3 | (name.charAt(0) - 'a');
+    }
+
+    void makeMove(int move) {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        int flags = Move.flags(move);
+        int us = sideToMove;
+
+        if (ply == undo.length) {
+            undo = java.util.Arrays.copyOf(undo, ply * 2);
+            hashes = java.util.Arrays.copyOf(hashes, ply * 2);
+        }
+        hashes[ply] = hash;
+
+        int captured;
+        if (flags == Move.EN_PASSANT) {
+            captured = remove(to ^ 8);
+        } else {
+            captured = remove(to);
+        }
+        undo[ply++] = (captured + 1) | castling << 4 | (epSquare + 1) << 8 | halfmoveClock << 16;
+
+        int piece = remove(from);
+        put(to, Move.isPromotion(move) ? piece(us, Move.promotionType(move)) : piece);
+        if (flags == Move.KING_CASTLE) {
+            put(to - 1, remove(to + 1));
+        } else if (flags == Move.QUEEN_CASTLE) {
+            put(to + 1, remove(to - 2));
+        }
+
+        setCastling(castling & CASTLING_MASK[from] & CASTLING_MASK[to]);
+        if (epSquare >= 0) {
+            hash ^= Zobrist.EN_PASSANT_FILE[epSquare & 7];
+        }
+        epSquare = flags == Move.DOUBLE_PUSH ? to ^ 8 : -1;
+        if (epSquare >= 0) {
+            hash ^= Zobrist.EN_PASSANT_FILE[epSquare & 7];
+        }
+        hash ^= Zobrist.SIDE_TO_MOVE;
+        halfmoveClock = captured != NO_PIECE || typeOf(piece) == PAWN ? 0 : halfmoveClock + 1;
+        if (us == BLACK) {
+            fullmoveNumber++;
+        }
+        sideToMove = us ^ 1;
+    }
+
+    // Passes the turn; only the search uses this, for null-move pruning.
+    void makeNullMove() {
+        if (ply == undo.length) {
+            undo = java.util.Arrays.copyOf(undo, ply * 2);
+            hashes = java.util.Arrays.copyOf(hashes, ply * 2);
+        }
+        hashes[ply] = hash;
+        undo[ply++] = castling << 4 | (epSquare + 1) << 8 | halfmoveClock << 16;
+        if (epSquare >= 0) {
+            hash ^= Zobrist.EN_PASSANT_FILE[epSquare & 7];
+            epSquare = -1;
+        }
+        hash ^= Zobrist.SIDE_TO_MOVE;
+        sideToMove ^= 1;
+    }
+
+    void unmakeNullMove() {
+        int state = undo[--ply];
+        epSquare = (state >>> 8 & 127) - 1;
+        sideToMove ^= 1;
+        hash = hashes[ply];
+    }
+
+    // True when the current position already occurred since the last capture or pawn move.
+    boolean isRepetition() {
+        int earliest = Math.max(0, ply - halfmoveClock);
+        for (int k = ply - 4; k >= earliest; k -= 2) {
+            if (hashes[k] == hash) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // How many times the current position has occurred, counting this one; three is a draw.
+    int repetitions() {
+        int count = 1;
+        int earliest = Math.max(0, ply - halfmoveClock);
+        for (int k = ply - 4; k >= earliest; k -= 2) {
+            if (hashes[k] == hash) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    boolean hasNonPawnMaterial(int color) {
+        long[] ours = pieces[color];
+        return (ours[KNIGHT] | ours[BISHOP] | ours[ROOK] | ours[QUEEN]) != 0;
+    }
+
+    Position copy() {
+        Position copy = new Position();
+        for (int color = WHITE; color <= BLACK; color++) {
+            System.arraycopy(pieces[color], 0, copy.pieces[color], 0, 6);
+        }
+        System.arraycopy(colors, 0, copy.colors, 0, 2);
+        System.arraycopy(mailbox, 0, copy.mailbox, 0, 64);
+        System.arraycopy(kingSquares, 0, copy.kingSquares, 0, 2);
+        copy.occupied = occupied;
+        copy.sideToMove = sideToMove;
+        copy.castling = castling;
+        copy.epSquare = epSquare;
+        copy.halfmoveClock = halfmoveClock;
+        copy.fullmoveNumber = fullmoveNumber;
+        copy.hash = hash;
+        copy.midgameScore = midgameScore;
+        copy.endgameScore = endgameScore;
+        copy.phase = phase;
+        copy.accumulator = accumulator == null ? null : accumulator.copy();
+        copy.undo = java.util.Arrays.copyOf(undo, ply + Search.MAX_PLY);
+        copy.hashes = java.util.Arrays.copyOf(hashes, ply + Search.MAX_PLY);
+        copy.ply = ply;
+        return copy;
+    }
+
+    void unmakeMove(int move) {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        int flags = Move.flags(move);
+        int us = sideToMove ^ 1;
+        int state = undo[--ply];
+
+        if (flags == Move.KING_CASTLE) {
+            put(to + 1, remove(to - 1));
+        } else if (flags == Move.QUEEN_CASTLE) {
+            put(to - 2, remove(to + 1));
+        }
+        int piece = remove(to);
+        put(from, Move.isPromotion(move) ? piece(us, PAWN) : piece);
+        int captured = (state & 15) - 1;
+        if (captured != NO_PIECE) {
+            put(flags == Move.EN_PASSANT ? to ^ 8 : to, captured);
+        }
+
+        castling = state >>> 4 & 15;
+        epSquare = (state >>> 8 & 127) - 1;
+        halfmoveClock = state >>> 16;
+        if (us == BLACK) {
+            fullmoveNumber--;
+        }
+        sideToMove = us;
+        hash = hashes[ply];
+    }
+
+    // Squares are numbered a1 = 0 .. h8 = 63; the Swing grid has row 0 at the top (rank 8).
+    static int square(int row, int col) {
+        return (7 - row) << 3 | col;
+    }
+
+    static int row(int sq) {
+        return 7 - (sq >>> 3);
+    }
+
+    static int col(int sq) {
+        return sq & 7;
+    }
+
+    static int piece(int color, int type) {
+        return color * 6 + type;
+    }
+
+    static int colorOf(int piece) {
+        return piece >= 6 ? BLACK : WHITE;
+    }
+
+    static int typeOf(int piece) {
+        return piece >= 6 ? piece - 6 : piece;
+    }
+
+    int pieceAt(int sq) {
+        return mailbox[sq];
+    }
+
+    int pieceAt(int row, int col) {
+        return mailbox[square(row, col)];
+    }
+
+    void put(int sq, int piece) {
+        long bit = 1L << sq;
+        int color = colorOf(piece);
+        int type = typeOf(piece);
+        pieces[color][type] |= bit;
+        colors[color] |= bit;
+        occupied |= bit;
+        mailbox[sq] = (byte) piece;
+        hash ^= Zobrist.PIECE_SQUARE[piece][sq];
+        midgameScore += Evaluation.MIDGAME[piece][sq];
+        endgameScore += Evaluation.ENDGAME[piece][sq];
+        phase += Evaluation.PHASE[piece];
+        if (accumulator != null) {
+            accumulator.add(piece, sq);
+        }
+        if (type == KING) {
+            kingSquares[color] = sq;
+        }
+        validAttackMaps = 0;
+    }
+
+    void put(int sq, int color, int type) {
+        put(sq, piece(color, type));
+    }
+
+    int remove(int sq) {
+        int piece = mailbox[sq];
+        if (piece != NO_PIECE) {
+            long mask = ~(1L << sq);
+            int color = colorOf(piece);
+            int type = typeOf(piece);
+            pieces[color][type] &= mask;
+            colors[color] &= mask;
+            occupied &= mask;
+            mailbox[sq] = (byte) NO_PIECE;
+            hash ^= Zobrist.PIECE_SQUARE[piece][sq];
+            midgameScore -= Evaluation.MIDGAME[piece][sq];
+            endgameScore -= Evaluation.ENDGAME[piece][sq];
+            phase -= Evaluation.PHASE[piece];
+            if (accumulator != null) {
+                accumulator.remove(piece, sq);
+            }
+            if (type == KING) {
+                kingSquares[color] = 64;
+            }
+            validAttackMaps = 0;
+        }
+        return piece;
+    }
+
+    // Moves whatever stands on from to to and returns the piece that was captured there, if any.
+    int move(int from, int to) {
+        int captured = remove(to);
+        put(to, remove(from));
+        return captured;
+    }
+
+    // 64 when the side has no king on the board.
+    int kingSquare(int color) {
+        return kingSquares[color];
+    }
+
+    static long attacks(int type, int color, int sq, long occupied) {
+        switch (type) {
+            case PAWN:
+                return Attacks.pawn(color, sq);
+            case KNIGHT:
+                return Attacks.knight(sq);
+            case BISHOP:
+                return Attacks.bishop(sq, occupied);
+            case ROOK:
+                return Attacks.rook(sq, occupied);
+            case QUEEN:
+                return Attacks.queen(sq, occupied);
+            case KING:
+                return Attacks.king(sq);
+            default:
+                return 0L;
+        }
+    }
+
+    long pawnPushes(int color, int sq) {
+        long empty = ~occupied;
+        if (color == WHITE) {
+            long single = (1L << sq << 8) & empty;
+            return single | ((single & (Attacks.RANK_1 << 16)) << 8 & empty);
+        }
+        long single = (1L << sq >>> 8) & empty;
+        return single | ((single & (Attacks.RANK_8 >>> 16)) >>> 8 & empty);
+    }
+
+    // Pseudo-legal destinations for a piece of the given type and color standing on sq.
+    long targets(int type, int color, int sq) {
+        if (type == PAWN) {
+            return pawnPushes(color, sq) | (Attacks.pawn(color, sq) & colors[color ^ 1]);
+        }
+        return attacks(type, color, sq, occupied) & ~colors[color];
+    }
+
+    boolean canMove(int type, int color, int from, int to) {
+        return (targets(type, color, from) & (1L << to)) != 0;
+    }
+
+    long attackersTo(int sq, int byColor, long occupied) {
+        long[] theirs = pieces[byColor];
+        long rooks = theirs[ROOK] | theirs[QUEEN];
+        long bishops = theirs[BISHOP] | theirs[QUEEN];
+        return (Attacks.pawn(byColor ^ 1, sq) & theirs[PAWN])
+                | (Attacks.knight(sq) & theirs[KNIGHT])
+                | (Attacks.king(sq) & theirs[KING])
+                | (Attacks.rook(sq, occupied) & rooks)
+                | (Attacks.bishop(sq, occupied) & bishops);
+    }
+
+    boolean isAttacked(int sq, int byColor) {
+        return attackersTo(sq, byColor, occupied) != 0;
+    }
+
+    long attackedBy(int color) {
+        if ((validAttackMaps & 1 << color) == 0) {
+            attackMaps[color] = attackMap(color, occupied);
+            validAttackMaps |= 1 << color;
+        }
+        return attackMaps[color];
+    }
+
+    long attackMap(int color, long occupied) {
+        long[] ours = pieces[color];
+        long pawns = ours[PAWN];
+        long map = color == WHITE
+                ? (pawns & ~Attacks.FILE_A) << 7 | (pawns & ~Attacks.FILE_H) << 9
+                : (pawns & ~Attacks.FILE_A) >>> 9 | (pawns & ~Attacks.FILE_H) >>> 7;
+        for (long b = ours[KNIGHT]; b != 0; b &= b - 1) {
+            map |= Attacks.knight(Long.numberOfTrailingZeros(b));
+        }
+        for (long b = ours[BISHOP] | ours[QUEEN]; b != 0; b &= b - 1) {
+            map |= Attacks.bishop(Long.numberOfTrailingZeros(b), occupied);
+        }
+        for (long b = ours[ROOK] | ours[QUEEN]; b != 0; b &= b - 1) {
+            map |= Attacks.rook(Long.numberOfTrailingZeros(b), occupied);
+        }
+        if (kingSquares[color] < 64) {
+            map |= Attacks.king(kingSquares[color]);
+        }
+        return map;
+    }
+
+    boolean inCheck(int color) {
+        int king = kingSquares[color];
+        return king < 64 && (attackedBy(color ^ 1) & 1L << king) != 0;
+    }
+
+    boolean inCheck() {
+        return inCheck(sideToMove);
+    }
+
+    // Pieces of the given color that are the only blocker between their king and an enemy slider.
+    long pinned(int color) {
+        int king = kingSquare(color);
+        long[] theirs = pieces[color ^ 1];
+        long snipers = (Attacks.rook(king, 0L) & (theirs[ROOK] | theirs[QUEEN]))
+                | (Attacks.bishop(king, 0L) & (theirs[BISHOP] | theirs[QUEEN]));
+        long pinned = 0L;
+        while (snipers != 0) {
+            long blockers = Attacks.BETWEEN[king][Long.numberOfTrailingZeros(snipers)] & occupied;
+            if (blockers != 0 && (blockers & (blockers - 1)) == 0) {
+                pinned |= blockers & colors[color];
+            }
+            snipers &= snipers - 1;
+        }
+        return pinned;
+    }
+}
@@ -0,0 +1,197 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Standard algebraic notation, resolved against the legal move list. Parsing works on raw bytes so a
+// PGN reader can hand over slices of a mapped file without creating a String per token.
+final class San {
+    private static final String PIECE_LETTERS = "PNBRQK";
+
+    private San() {
+    }
+
+    static int parse(Position pos, String san) {
+        byte[] bytes = san.getBytes(StandardCharsets.US_ASCII);
+        return parse(pos, ByteBuffer.wrap(bytes), 0, bytes.length, new int[MoveGen.MAX_MOVES]);
+    }
+
+    // Returns the unique legal move written as buf[start, end), or Move.NONE if it is illegal or ambiguous.
+    static int parse(Position pos, ByteBuffer buf, int start, int end, int[] moves) {
+        int first = buf.get(start);
+        if (first == 'O' || first == '0') {
+            int castles = 0;
+            for (int k = start; k < end; k++) {
+                int c = buf.get(k);
+                if (c == 'O' || c == '0') {
+                    castles++;
+                }
+            }
+            return findCastle(pos, castles == 3 ? Move.QUEEN_CASTLE : Move.KING_CASTLE, moves);
+        }
+
+        int type = Position.PAWN;
+        int k = start;
+        int piece = pieceType(first);
+        if (piece > Position.PAWN) {
+            type = piece;
+            k++;
+        }
+
+        // Collect only file and rank characters; the last pair is the destination, anything before it disambiguates.
+        int fromFile = -1;
+        int fromRank = -1;
+        int lastFile = -1;
+        int lastRank = -1;
+        int promotion = -1;
+        for (; k < end; k++) {
+            int c = buf.get(k);
+            if (c >= 'a' && c <= 'h') {
+                if (lastFile >= 0) {
+                    fromFile = lastFile;
+                }
+                if (lastRank >= 0) {
+                    fromRank = lastRank;
+                    lastRank = -1;
+                }
+                lastFile = c - 'a';
+            } else if (c >= '1' && c <= '8') {
+                if (lastRank >= 0) {
+                    fromRank = lastRank;
+                }
+                lastRank = c - '1';
+            } else if (pieceType(c) > Position.PAWN && type == Position.PAWN) {
+                promotion = pieceType(c);
+            }
+        }
+        if (lastFile < 0 || lastRank < 0) {
+            return Move.NONE;
+        }
+        int to = lastRank << 3 | lastFile;
+
+        int count = MoveGen.generate(pos, moves, 0);
+        int found = Move.NONE;
+        for (int m = 0; m < count; m++) {
+            int move = moves[m];
+            int from = Move.from(move);
+            if (Move.to(move) != to || Position.typeOf(pos.pieceAt(from)) != type || Move.isCastle(move)) {
+                continue;
+            }
+            if ((fromFile >= 0 && (from & 7) != fromFile) || (fromRank >= 0 && (from >>> 3) != fromRank)) {
+                continue;
+            }
+            if (Move.isPromotion(move) && Move.promotionType(move) != (promotion < 0 ? Position.QUEEN : promotion)) {
+                continue;
+            }
+            if (found != Move.NONE) {
+                return Move.NONE;
+            }
+            found = move;
+        }
+        return found;
+    }
+
+    // Writes a legal move of pos in SAN, with a file, rank or square to tell it apart from other moves of the
+    // same piece type to the same square, and + or # when it gives check or mate. pos is left unchanged.
+    static String format(Position pos, int move, int[] moves) {
+        StringBuilder san = new StringBuilder(8);
+        int from = Move.from(move);
+        int to = Move.to(move);
+        if (Move.flags(move) == Move.KING_CASTLE) {
+            san.append("O-O");
+        } else if (Move.flags(move) == Move.QUEEN_CASTLE) {
+            san.append("O-O-O");
+        } else {
+            int type = Position.typeOf(pos.pieceAt(from));
+            if (type == Position.PAWN) {
+                if (Move.isCapture(move)) {
+                    san.append((char) ('a' + (from & 7)));
+                }
+            } else {
+                san.append(PIECE_LETTERS.charAt(type));
+                boolean ambiguous = false;
+                boolean sameFile = false;
+                boolean sameRank = false;
+                int count = MoveGen.generate(pos, moves, 0);
+                for (int m = 0; m < count; m++) {
+                    int other = Move.from(moves[m]);
+                    if (other != from && Move.to(moves[m]) == to && pos.pieceAt(other) == pos.pieceAt(from)) {
+                        ambiguous = true;
+                        sameFile |= (other & 7) == (from & 7);
+                        sameRank |= (other >>> 3) == (from >>> 3);
+                    }
+                }
+                if (ambiguous && (!sameFile || sameRank)) {
+                    san.append((char) ('a' + (from & 7)));
+                }
+                if (ambiguous && sameFile) {
+                    san.append((char) ('1' + (from >>> 3)));
+                }
+            }
+            if (Move.isCapture(move)) {
+                san.append('x');
+            }
+            san.append(Position.squareName(to));
+            if (Move.isPromotion(move)) {
+                san.append('=').append(PIECE_LETTERS.charAt(Move.promotionType(move)));
+            }
+        }
+        pos.makeMove(move);
+        if (pos.inCheck()) {
+            san.append(MoveGen.hasLegalMove(pos) ? '+' : '#');
+        }
+        pos.unmakeMove(move);
+        return san.toString();
+    }
+
+    static String format(Position pos, int move) {
+        return format(pos, move, new int[MoveGen.MAX_MOVES]);
+    }
+
+    // A line of legal moves from pos with move numbers, e.g. "12... Nf6 13. Bg5 Be7". pos is left unchanged.
+    static String formatLine(Position pos, int[] line) {
+        StringBuilder text = new StringBuilder(line.length * 6);
+        int[] moves = new int[MoveGen.MAX_MOVES];
+        for (int k = 0; k < line.length; k++) {
+            if (k > 0) {
+                text.append(' ');
+            }
+            if (pos.sideToMove == Position.WHITE) {
+                text.append(pos.fullmoveNumber).append(". ");
+            } else if (k == 0) {
+                text.append(pos.fullmoveNumber).append("... ");
+            }
+            text.append(format(pos, line[k], moves));
+            pos.makeMove(line[k]);
+        }
+        for (int k = line.length - 1; k >= 0; k--) {
+            pos.unmakeMove(line[k]);
+        }
+        return text.toString();
+    }
+
+    private static int findCastle(Position pos, int flags, int[] moves) {
+        int count = MoveGen.generate(pos, moves, 0);
+        for (int m = 0; m < count; m++) {
+            if (Move.flags(moves[m]) == flags) {
+                return moves[m];
+            }
+        }
+        return Move.NONE;
+    }
+
+    private static int pieceType(int c) {
+        switch (c) {
+            case 'N':
+                return Position.KNIGHT;
+            case 'B':
+                return Position.BISHOP;
+            case 'R':
+                return Position.ROOK;
+            case 'Q':
+                return Position.QUEEN;
+            case 'K':
+                return Position.KING;
+            default:
+                return -1;
+        }
+    }
+}
@@ -0,0 +1,476 @@
+// Iterative-deepening principal-variation search with quiescence, null-move pruning and
+// TT / MVV-LVA / killer / history move ordering. One instance searches one position on one thread;
+// Lazy SMP runs several instances over copies of the same position and one shared table.
+final class Search {
+    static final int INFINITY = 32000;
+    static final int MATE = 31000;
+    static final int MATE_BOUND = MATE - 1000;
+    static final int MAX_PLY = 128;
+
+    private static final int TT_MOVE_SCORE = 1 << 30;
+    private static final int CAPTURE_SCORE = 1 << 24;
+    private static final int KILLER_SCORE = 1 << 20;
+    private static final int HISTORY_LIMIT = KILLER_SCORE - 1;
+    private static final int NULL_MOVE_REDUCTION = 2;
+
+    static final class Limits {
+        final int depth;
+        final long timeMillis;
+        final long nodes;
+
+        Limits(int depth, long timeMillis, long nodes) {
+            this.depth = depth;
+            this.timeMillis = timeMillis;
+            this.nodes = nodes;
+        }
+
+        static Limits depth(int depth) {
+            return new Limits(depth, 0, 0);
+        }
+
+        static Limits time(long millis) {
+            return new Limits(MAX_PLY - 1, millis, 0);
+        }
+    }
+
+    // Told about every completed iteration of the main search thread, e.g. to stream UCI info lines.
+    interface Listener {
+        void iterationFinished(int depth, int score, long elapsedMillis, int[] pv);
+
+        // The best lines of the iteration, best first: as many as setMultiPv asked for and there are legal moves.
+        default void linesFinished(int depth, int[] scores, int[][] pvs, long elapsedMillis) {
+        }
+    }
+
+    static final class Result {
+        final int bestMove;
+        final int score;
+        final int depth;
+        final long nodes;
+        final int[] pv;
+
+        Result(int bestMove, int score, int depth, long nodes, int[] pv) {
+            this.bestMove = bestMove;
+            this.score = score;
+            this.depth = depth;
+            this.nodes = nodes;
+            this.pv = pv;
+        }
+    }
+
+    private final Position pos;
+    private final TranspositionTable table;
+    private final int threadIndex;
+    private final Tablebase tablebase = Tablebase.shared();
+    private Listener listener;
+    private int multiPv = 1;
+    // Root moves left out of the current search, so that it finds the best line among the others.
+    private final int[] excludedRootMoves = new int[MoveGen.MAX_MOVES];
+    private int excludedCount;
+    private final int[] moves = new int[MAX_PLY * MoveGen.MAX_MOVES];
+    private final int[] scores = new int[MAX_PLY * MoveGen.MAX_MOVES];
+    private final int[][] killers = new int[MAX_PLY][2];
+    private final int[][] history = new int[12][64];
+    private final int[][] pvTable = new int[MAX_PLY + 1][MAX_PLY + 1];
+    private final int[] pvLength = new int[MAX_PLY + 1];
+
+    private volatile boolean stopped;
+    private long nodes;
+    private long nodeLimit;
+    private long deadline;
+    private int rootBestMove;
+    private int rootBestScore;
+
+    Search(Position pos, TranspositionTable table) {
+        this(pos, table, 0);
+    }
+
+    // threadIndex 0 is the main search; helpers (1..n) start at staggered depths and shuffle quiet moves
+    // so that they fill the shared table with different parts of the tree instead of duplicating the main thread.
+    Search(Position pos, TranspositionTable table, int threadIndex) {
+        this.pos = pos;
+        this.table = table;
+        this.threadIndex = threadIndex;
+    }
+
+    void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    // Searches the best `lines` root moves each iteration instead of only the best one. The extra lines are
+    // searched one after another with the earlier best moves excluded, so they cost a search each.
+    void setMultiPv(int lines) {
+        multiPv = Math.max(1, lines);
+    }
+
+    void stop() {
+        stopped = true;
+    }
+
+    boolean isStopped() {
+        return stopped;
+    }
+
+    long nodes() {
+        return nodes;
+    }
+
+    Result run(Limits limits) {
+        long start = System.currentTimeMillis();
+        deadline = limits.timeMillis > 0 ? start + limits.timeMillis : Long.MAX_VALUE;
+        nodeLimit = limits.nodes > 0 ? limits.nodes : Long.MAX_VALUE;
+        nodes = 0;
+        if (threadIndex == 0) {
+            table.newSearch();
+        }
+
+        int bestMove = Move.NONE;
+        int bestScore = 0;
+        int completedDepth = 0;
+        int[] pv = new int[0];
+        int[] rootMoves = new int[MoveGen.MAX_MOVES];
+        int rootCount = MoveGen.generate(pos, rootMoves, 0);
+        if (rootCount > 0) {
+            bestMove = rootMoves[0];
+        }
+        int lines = Math.max(1, Math.min(multiPv, rootCount));
+        int[] lineScores = new int[lines];
+        int[][] linePvs = new int[lines][];
+
+        for (int depth = 1 + (threadIndex & 1); depth <= limits.depth && rootCount > 0; depth++) {
+            rootBestMove = Move.NONE;
+            Telemetry.SearchIterationEvent event = new Telemetry.SearchIterationEvent();
+            event.begin();
+            int score = negamax(depth, 0, -INFINITY, INFINITY, false);
+            if (stopped) {
+                // A partial iteration is still trustworthy for its first (previous best) root move onwards.
+                if (rootBestMove != Move.NONE) {
+                    bestMove = rootBestMove;
+                    bestScore = rootBestScore;
+                }
+                break;
+            }
+            bestMove = pvLength[0] > 0 ? pvTable[0][0] : bestMove;
+            bestScore = score;
+            completedDepth = depth;
+            pv = java.util.Arrays.copyOf(pvTable[0], pvLength[0]);
+            lineScores[0] = score;
+            linePvs[0] = pv;
+            int found = 1;
+            for (; found < lines && pv.length > 0; found++) {
+                excludedRootMoves[excludedCount++] = linePvs[found - 1][0];
+                int lineScore = negamax(depth, 0, -INFINITY, INFINITY, false);
+                if (stopped || pvLength[0] == 0) {
+                    break;
+                }
+                lineScores[found] = lineScore;
+                linePvs[found] = java.util.Arrays.copyOf(pvTable[0], pvLength[0]);
+            }
+            excludedCount = 0;
+            Telemetry.iterationFinished();
+            if (event.shouldCommit()) {
+                event.thread = threadIndex;
+                event.depth = depth;
+                event.score = score;
+                event.nodes = nodes;
+                event.bestMove = Move.toUci(bestMove);
+                event.commit();
+            }
+
+            long elapsed = System.currentTimeMillis() - start;
+            if (listener != null) {
+                listener.iterationFinished(depth, score, elapsed, pv);
+                if (found == lines) {
+                    listener.linesFinished(depth, lineScores.clone(), linePvs.clone(), elapsed);
+                }
+            }
+            if (stopped) {
+                break;
+            }
+            // Another iteration usually costs several times the last one, so give up early rather than waste it.
+            if (limits.timeMillis > 0 && elapsed * 2 > limits.timeMillis) {
+                break;
+            }
+            if (Math.abs(score) >= MATE_BOUND && depth > MATE - Math.abs(score)) {
+                break;
+            }
+        }
+        return new Result(bestMove, bestScore, completedDepth, nodes, pv);
+    }
+
+    private void checkLimits() {
+        if (nodes >= nodeLimit || System.currentTimeMillis() >= deadline) {
+            stopped = true;
+        }
+    }
+
+    private int negamax(int depth, int ply, int alpha, int beta, boolean nullAllowed) {
+        pvLength[ply] = ply;
+        if ((++nodes & 1023) == 0) {
+            checkLimits();
+        }
+        if (stopped) {
+            return 0;
+        }
+        if (ply > 0 && (pos.halfmoveClock >= 100 || pos.isRepetition())) {
+            return 0;
+        }
+        if (ply >= MAX_PLY) {
+            return Evaluation.evaluate(pos);
+        }
+        if (tablebase != null && ply > 0 && Long.bitCount(pos.occupied) <= Tablebase.MAX_PIECES) {
+            int score = tablebase.score(pos, ply);
+            if (score != Tablebase.NOT_FOUND) {
+                return score;
+            }
+        }
+
+        boolean inCheck = pos.inCheck();
+        if (inCheck) {
+            depth++;
+        }
+        if (depth <= 0) {
+            return quiesce(ply, alpha, beta);
+        }
+
+        boolean pvNode = beta - alpha > 1;
+        long key = pos.hash;
+        long entry = table.probe(key);
+        int ttMove = Move.NONE;
+        if (entry != 0) {
+            ttMove = TranspositionTable.move(entry);
+            if (!pvNode && ply > 0 && TranspositionTable.depth(entry) >= depth) {
+                int score = fromTable(TranspositionTable.score(entry), ply);
+                int bound = TranspositionTable.bound(entry);
+                if (bound == TranspositionTable.EXACT
+                        || (bound == TranspositionTable.LOWER && score >= beta)
+                        || (bound == TranspositionTable.UPPER && score <= alpha)) {
+                    return score;
+                }
+            }
+        }
+
+        if (nullAllowed && !pvNode && !inCheck && depth >= 3 && pos.hasNonPawnMaterial(pos.sideToMove)
+                && Evaluation.evaluate(pos) >= beta) {
+            pos.makeNullMove();
+            int score = -negamax(depth - 1 - NULL_MOVE_REDUCTION, ply + 1, -beta, -beta + 1, false);
+            pos.unmakeNullMove();
+            if (stopped) {
+                return 0;
+            }
+            if (score >= beta) {
+                return score >= MATE_BOUND ? beta : score;
+            }
+        }
+
+        int offset = ply * MoveGen.MAX_MOVES;
+        int end = MoveGen.generate(pos, moves, offset);
+        if (end == offset) {
+            return inCheck ? -MATE + ply : 0;
+        }
+        scoreMoves(offset, end, ttMove, ply);
+
+        int originalAlpha = alpha;
+        int bestScore = -INFINITY;
+        int bestMove = Move.NONE;
+        int searched = 0;
+        for (int k = offset; k < end; k++) {
+            int move = pickNext(k, end);
+            if (ply == 0 && excludedCount > 0 && isExcluded(move)) {
+                continue;
+            }
+            pos.makeMove(move);
+            int score;
+            if (searched++ == 0) {
+                score = -negamax(depth - 1, ply + 1, -beta, -alpha, true);
+            } else {
+                score = -negamax(depth - 1, ply + 1, -alpha - 1, -alpha, true);
+                if (score > alpha && score < beta) {
+                    score = -negamax(depth - 1, ply + 1, -beta, -alpha, true);
+                }
+            }
+            pos.unmakeMove(move);
+            if (stopped) {
+                return 0;
+            }
+
+            if (score > bestScore) {
+                bestScore = score;
+                bestMove = move;
+                if (score > alpha) {
+                    alpha = score;
+                    updatePv(ply, move);
+                    if (ply == 0) {
+                        rootBestMove = move;
+                        rootBestScore = score;
+                    }
+                    if (score >= beta) {
+                        if (!Move.isCapture(move) && !Move.isPromotion(move)) {
+                            rememberQuiet(move, depth, ply);
+                        }
+                        break;
+                    }
+                }
+            }
+        }
+
+        int bound = bestScore >= beta ? TranspositionTable.LOWER
+                : bestScore > originalAlpha ? TranspositionTable.EXACT : TranspositionTable.UPPER;
+        // A root search with moves left out has not seen the whole position, so it is not worth storing.
+        if (ply > 0 || excludedCount == 0) {
+            table.store(key, bestMove, toTable(bestScore, ply), depth, bound);
+        }
+        return bestScore;
+    }
+
+    private boolean isExcluded(int move) {
+        for (int k = 0; k < excludedCount; k++) {
+            if (excludedRootMoves[k] == move) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int quiesce(int ply, int alpha, int beta) {
+        pvLength[ply] = ply;
+        if ((++nodes & 1023) == 0) {
+            checkLimits();
+        }
+        if (stopped) {
+            return 0;
+        }
+        if (ply >= MAX_PLY) {
+            return Evaluation.evaluate(pos);
+        }
+
+        boolean inCheck = pos.inCheck();
+        int bestScore = -INFINITY;
+        if (!inCheck) {
+            bestScore = Evaluation.evaluate(pos);
+            if (bestScore >= beta) {
+                return bestScore;
+            }
+            alpha = Math.max(alpha, bestScore);
+        }
+
+        int offset = ply * MoveGen.MAX_MOVES;
+        int end = MoveGen.generate(pos, moves, offset);
+        if (end == offset) {
+            return inCheck ? -MATE + ply : 0;
+        }
+        if (!inCheck) {
+            // Only tactical moves are worth resolving once the side to move can stand pat.
+            int kept = offset;
+            for (int k = offset; k < end; k++) {
+                if (Move.isCapture(moves[k]) || Move.isPromotion(moves[k])) {
+                    moves[kept++] = moves[k];
+                }
+            }
+            end = kept;
+        }
+        scoreMoves(offset, end, Move.NONE, ply);
+
+        for (int k = offset; k < end; k++) {
+            int move = pickNext(k, end);
+            pos.makeMove(move);
+            int score = -quiesce(ply + 1, -beta, -alpha);
+            pos.unmakeMove(move);
+            if (stopped) {
+                return 0;
+            }
+            if (score > bestScore) {
+                bestScore = score;
+                if (score > alpha) {
+                    alpha = score;
+                    if (score >= beta) {
+                        break;
+                    }
+                }
+            }
+        }
+        return bestScore;
+    }
+
+    private void scoreMoves(int offset, int end, int ttMove, int ply) {
+        for (int k = offset; k < end; k++) {
+            int move = moves[k];
+            int from = Move.from(move);
+            int to = Move.to(move);
+            int score;
+            if (move == ttMove) {
+                score = TT_MOVE_SCORE;
+            } else if (Move.isCapture(move) || Move.isPromotion(move)) {
+                int victim = Move.flags(move) == Move.EN_PASSANT ? Position.PAWN
+                        : Move.isCapture(move) ? Position.typeOf(pos.pieceAt(to)) : -1;
+                int attacker = Position.typeOf(pos.pieceAt(from));
+                int promotion = Move.isPromotion(move) ? Move.promotionType(move) : 0;
+                score = CAPTURE_SCORE + (victim + 1) * 64 + promotion * 8 - attacker;
+            } else if (move == killers[ply][0]) {
+                score = KILLER_SCORE + 1;
+            } else if (move == killers[ply][1]) {
+                score = KILLER_SCORE;
+            } else {
+                score = history[pos.pieceAt(from)][to];
+                if (threadIndex != 0) {
+                    score += (move * (0x9E3779B9 * threadIndex)) >>> 26;
+                }
+            }
+            scores[k] = score;
+        }
+    }
+
+    // Selection sort one step at a time: a cutoff usually comes early, so sorting the whole list is wasted work.
+    private int pickNext(int k, int end) {
+        int best = k;
+        for (int i = k + 1; i < end; i++) {
+            if (scores[i] > scores[best]) {
+                best = i;
+            }
+        }
+        int move = moves[best];
+        int score = scores[best];
+        moves[best] = moves[k];
+        scores[best] = scores[k];
+        moves[k] = move;
+        scores[k] = score;
+        return move;
+    }
+
+    private void rememberQuiet(int move, int depth, int ply) {
+        if (killers[ply][0] != move) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = move;
+        }
+        int[] row = history[pos.pieceAt(Move.from(move))];
+        int to = Move.to(move);
+        row[to] += depth * depth;
+        if (row[to] > HISTORY_LIMIT) {
+            for (int[] pieceHistory : history) {
+                for (int sq = 0; sq < 64; sq++) {
+                    pieceHistory[sq] >>= 1;
+                }
+            }
+        }
+    }
+
+    private void updatePv(int ply, int move) {
+        int[] line = pvTable[ply];
+        line[ply] = move;
+        int[] child = pvTable[ply + 1];
+        int length = pvLength[ply + 1];
+        for (int k = ply + 1; k < length; k++) {
+            line[k] = child[k];
+        }
+        pvLength[ply] = Math.max(length, ply + 1);
+    }
+
+    // Mate scores are stored relative to the node, not the root, so they stay valid at any ply.
+    private static int toTable(int score, int ply) {
+        return score >= MATE_BOUND ? score + ply : score <= -MATE_BOUND ? score - ply : score;
+    }
+
+    private static int fromTable(int score, int ply) {
+        return score >= MATE_BOUND ? score - ply : score <= -MATE_BOUND ? score + ply : score;
+    }
+}
@@ -0,0 +1,55 @@
+import java.util.concurrent.CompletableFuture;
+
+// Lazy SMP scaling check: searches each position for a fixed time with 1, 2, 4 .. N threads and
+// reports nodes per second, plus the time the same thread count needs to reach a fixed depth.
+//   java SmpBench [maxThreads] [millisPerPosition] [depth]
+final class SmpBench {
+    private static final String[] POSITIONS = {
+        Position.START_FEN,
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+        "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+        "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+    };
+
+    public static void main(String[] args) {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        long millis = args.length > 1 ? Long.parseLong(args[1]) : 2000;
+        int depth = args.length > 2 ? Integer.parseInt(args[2]) : 9;
+
+        double baseNps = 0;
+        double baseTime = 0;
+        System.out.printf("%7s %14s %8s %14s %8s%n", "threads", "nps", "speedup", "ms to depth " + depth, "speedup");
+        for (int threads = 1; threads <= maxThreads; threads = threads < maxThreads ? Math.min(threads * 2, maxThreads) : threads + 1) {
+            long nodes = 0;
+            long nanos = 0;
+            long depthNanos = 0;
+            for (String fen : POSITIONS) {
+                long[] run = measure(fen, threads, new Search.Limits(Search.MAX_PLY - 1, millis, 0));
+                nodes += run[0];
+                nanos += run[1];
+                depthNanos += measure(fen, threads, Search.Limits.depth(depth))[1];
+            }
+            double nps = nodes * 1e9 / nanos;
+            double depthMillis = depthNanos / 1e6;
+            if (threads == 1) {
+                baseNps = nps;
+                baseTime = depthMillis;
+            }
+            System.out.printf("%7d %14.0f %7.2fx %14.0f %7.2fx%n", threads, nps, nps / baseNps, depthMillis, baseTime / depthMillis);
+        }
+    }
+
+    // Returns {nodes, elapsed nanos}; every run starts from an empty table so thread counts are compared fairly.
+    private static long[] measure(String fen, int threads, Search.Limits limits) {
+        Engine engine = new Engine(Engine.DEFAULT_HASH_MB, threads);
+        Position position = new Position();
+        position.setFen(fen);
+        CompletableFuture<Search.Result> done = new CompletableFuture<>();
+        long start = System.nanoTime();
+        engine.think(position, limits, done::complete);
+        Search.Result result = done.join();
+        long elapsed = System.nanoTime() - start;
+        engine.shutdown();
+        return new long[] {result.nodes, elapsed};
+    }
+}
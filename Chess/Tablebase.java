@@ -0,0 +1,420 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+// Endgame tablebases for up to five pieces, probed through read-only memory maps so that lookups from the
+// search threads or the window cost no heap.
+//   java Tablebase <dir> <fen>      print the tablebase verdict and best move for a position
+// One table covers a material signature named like KQvKR, stronger side as White, and consists of
+//   <name>.dtm   one byte per position: 0 draw, 255 unreachable, otherwise plies to mate + 1, where odd
+//                plies mean the side to move mates and even plies that it is mated
+//   <name>.wdl   two bits per position: 0 draw, 1 win, 2 loss, 3 unreachable
+// each holding every White-to-move position before every Black-to-move one. Positions with castling rights
+// or a capturable en-passant square are not covered. Tables are built by TablebaseGenerator.
+final class Tablebase {
+    static final int MAX_PIECES = 5;
+
+    static final int UNKNOWN = -1;
+    static final int DRAW = 0;
+    static final int WIN = 1;
+    static final int LOSS = 2;
+
+    // Search score for a position the tables do not cover.
+    static final int NOT_FOUND = Integer.MIN_VALUE;
+
+    static final int UNREACHABLE = 255;
+
+    private static final String[] LETTERS = {"P", "N", "B", "R", "Q"};
+    private static final int[] VALUES = {1, 3, 3, 5, 9};
+    private static final int CACHE_SIZE = 1024;
+
+    private static volatile Tablebase shared;
+
+    private static final ThreadLocal<int[]> SQUARES = ThreadLocal.withInitial(() -> new int[MAX_PIECES]);
+    private static final ThreadLocal<int[]> MOVES = ThreadLocal.withInitial(() -> new int[MoveGen.MAX_MOVES]);
+
+    // How the positions of one signature are numbered. Slot 0 is the white king, slot 1 the black king, then
+    // White's pieces and Black's from queen down to pawn. The white king is folded onto files a-d (and ranks
+    // 1-4 without pawns) by mirroring; every other slot takes 64 values, and identical pieces are stored in
+    // ascending square order so each placement has one index.
+    static final class Layout {
+        final int material;
+        final String name;
+        final int[] colors;
+        final int[] types;
+        final boolean pawns;
+        final int size;
+
+        Layout(int material) {
+            this.material = material;
+            int count = 2 + pieceCount(material);
+            colors = new int[count];
+            types = new int[count];
+            colors[1] = Position.BLACK;
+            types[0] = Position.KING;
+            types[1] = Position.KING;
+            int slot = 2;
+            StringBuilder name = new StringBuilder();
+            for (int color = Position.WHITE; color <= Position.BLACK; color++) {
+                name.append(color == Position.WHITE ? "K" : "vK");
+                for (int type = Position.QUEEN; type >= Position.PAWN; type--) {
+                    for (int k = count(material, color, type); k > 0; k--) {
+                        colors[slot] = color;
+                        types[slot++] = type;
+                        name.append(LETTERS[type]);
+                    }
+                }
+            }
+            this.name = name.toString();
+            pawns = count(material, Position.WHITE, Position.PAWN) + count(material, Position.BLACK, Position.PAWN) > 0;
+            size = (pawns ? 32 : 16) << 6 * (count - 1);
+        }
+
+        int slots() {
+            return types.length;
+        }
+
+        // Index of squares (one per slot, any orientation); squares is left in canonical form.
+        int index(int[] squares) {
+            int flip = (squares[0] & 7) > 3 ? 7 : 0;
+            if (!pawns && squares[0] >>> 3 > 3) {
+                flip |= 56;
+            }
+            int index = (squares[0] ^ flip) >>> 3 << 2 | (squares[0] ^ flip) & 3;
+            for (int slot = 1; slot < types.length; slot++) {
+                int sq = squares[slot] ^ flip;
+                int k = slot;
+                for (; k > 2 && sameGroup(k - 1, slot) && squares[k - 1] > sq; k--) {
+                    squares[k] = squares[k - 1];
+                }
+                squares[k] = sq;
+            }
+            for (int slot = 1; slot < types.length; slot++) {
+                index = index << 6 | squares[slot];
+            }
+            return index;
+        }
+
+        // Index of a position with this material; swap reads it with colors exchanged and the board flipped.
+        int index(Position position, boolean swap, int[] squares) {
+            int flip = swap ? 56 : 0;
+            int color = swap ? 1 : 0;
+            squares[0] = position.kingSquare(color) ^ flip;
+            squares[1] = position.kingSquare(color ^ 1) ^ flip;
+            int slot = 2;
+            while (slot < types.length) {
+                long bits = position.pieces[colors[slot] ^ color][types[slot]];
+                for (; bits != 0; bits &= bits - 1) {
+                    squares[slot++] = Long.numberOfTrailingZeros(bits) ^ flip;
+                }
+            }
+            return index(squares);
+        }
+
+        // Fills squares from an index; false if the index is not the canonical, well-formed form of a placement.
+        boolean decode(int index, int[] squares) {
+            long occupied = 0L;
+            for (int slot = types.length - 1; slot >= 1; slot--) {
+                squares[slot] = index & 63;
+                index >>>= 6;
+            }
+            squares[0] = (index >>> 2) << 3 | index & 3;
+            for (int slot = 0; slot < types.length; slot++) {
+                int sq = squares[slot];
+                if ((occupied & 1L << sq) != 0) {
+                    return false;
+                }
+                occupied |= 1L << sq;
+                if (types[slot] == Position.PAWN && (sq < 8 || sq >= 56)) {
+                    return false;
+                }
+                if (slot > 2 && sameGroup(slot - 1, slot) && squares[slot - 1] > sq) {
+                    return false;
+                }
+            }
+            return (Attacks.king(squares[0]) & 1L << squares[1]) == 0;
+        }
+
+        void setUp(Position position, int[] squares, int sideToMove) {
+            position.clear();
+            position.castling = 0;
+            position.epSquare = -1;
+            position.halfmoveClock = 0;
+            position.fullmoveNumber = 1;
+            position.sideToMove = sideToMove;
+            for (int slot = 0; slot < types.length; slot++) {
+                position.put(squares[slot], colors[slot], types[slot]);
+            }
+            position.hash = position.computeHash();
+        }
+
+        private boolean sameGroup(int a, int b) {
+            return colors[a] == colors[b] && types[a] == types[b];
+        }
+    }
+
+    // Material without the kings, two bits per color and piece type.
+    static int material(Position position) {
+        int material = 0;
+        for (int color = Position.WHITE; color <= Position.BLACK; color++) {
+            for (int type = Position.PAWN; type <= Position.QUEEN; type++) {
+                material |= Long.bitCount(position.pieces[color][type]) << 2 * (color * 5 + type);
+            }
+        }
+        return material;
+    }
+
+    static int count(int material, int color, int type) {
+        return material >>> 2 * (color * 5 + type) & 3;
+    }
+
+    static int pieceCount(int material) {
+        int count = 0;
+        for (int k = 0; k < 10; k++) {
+            count += material >>> 2 * k & 3;
+        }
+        return count;
+    }
+
+    // The orientation tables are stored in: more material (then the larger piece mix) as White.
+    static int canonical(int material) {
+        int white = material & 1023;
+        int black = material >>> 10;
+        int whiteValue = 0;
+        int blackValue = 0;
+        for (int type = Position.PAWN; type <= Position.QUEEN; type++) {
+            whiteValue += VALUES[type] * count(material, Position.WHITE, type);
+            blackValue += VALUES[type] * count(material, Position.BLACK, type);
+        }
+        return whiteValue > blackValue || (whiteValue == blackValue && white >= black) ? material : black | white << 10;
+    }
+
+    // Parses a signature such as KRPvKR.
+    static int parse(String name) {
+        String[] sides = name.toUpperCase().split("V");
+        if (sides.length != 2 || !sides[0].startsWith("K") || !sides[1].startsWith("K")) {
+            throw new IllegalArgumentException("Bad material signature: " + name);
+        }
+        int material = 0;
+        for (int color = Position.WHITE; color <= Position.BLACK; color++) {
+            for (int k = 1; k < sides[color].length(); k++) {
+                int type = String.join("", LETTERS).indexOf(sides[color].charAt(k));
+                if (type < 0 || count(material, color, type) == 3) {
+                    throw new IllegalArgumentException("Bad material signature: " + name);
+                }
+                material += 1 << 2 * (color * 5 + type);
+            }
+        }
+        if (pieceCount(material) + 2 > MAX_PIECES) {
+            throw new IllegalArgumentException("At most " + MAX_PIECES + " pieces: " + name);
+        }
+        return material;
+    }
+
+    private static final class Table {
+        final Layout layout;
+        final MappedByteBuffer[] dtm = new MappedByteBuffer[2];
+        final MappedByteBuffer[] wdl = new MappedByteBuffer[2];
+
+        Table(Layout layout, Path dir) throws IOException {
+            this.layout = layout;
+            try (FileChannel channel = FileChannel.open(dir.resolve(layout.name + ".dtm"), StandardOpenOption.READ)) {
+                for (int side = 0; side < 2; side++) {
+                    dtm[side] = channel.map(FileChannel.MapMode.READ_ONLY, (long) side * layout.size, layout.size);
+                }
+            }
+            Path wdlPath = dir.resolve(layout.name + ".wdl");
+            if (Files.exists(wdlPath)) {
+                int bytes = layout.size / 4;
+                try (FileChannel channel = FileChannel.open(wdlPath, StandardOpenOption.READ)) {
+                    for (int side = 0; side < 2; side++) {
+                        wdl[side] = channel.map(FileChannel.MapMode.READ_ONLY, (long) side * bytes, bytes);
+                    }
+                }
+            }
+        }
+    }
+
+    private final Path dir;
+    // Open-addressed by material, so finding a table allocates nothing; absent tables are remembered as null.
+    private final AtomicIntegerArray cacheKeys = new AtomicIntegerArray(CACHE_SIZE);
+    private final Table[] cacheTables = new Table[CACHE_SIZE];
+
+    Tablebase(Path dir) {
+        this.dir = dir;
+    }
+
+    // The tables every engine and the window consult, or null when none are configured.
+    static Tablebase shared() {
+        return shared;
+    }
+
+    static synchronized void loadShared(Path dir) {
+        shared = dir == null ? null : new Tablebase(dir);
+    }
+
+    private Table table(int material) {
+        int slot = (material * 0x9E3779B1 >>> 22) & (CACHE_SIZE - 1);
+        while (true) {
+            int key = cacheKeys.get(slot);
+            if (key == material + 1) {
+                return cacheTables[slot];
+            }
+            if (key == 0) {
+                return load(material);
+            }
+            slot = (slot + 1) & (CACHE_SIZE - 1);
+        }
+    }
+
+    private synchronized Table load(int material) {
+        int slot = (material * 0x9E3779B1 >>> 22) & (CACHE_SIZE - 1);
+        while (cacheKeys.get(slot) != 0 && cacheKeys.get(slot) != material + 1) {
+            slot = (slot + 1) & (CACHE_SIZE - 1);
+        }
+        if (cacheKeys.get(slot) == 0) {
+            Layout layout = new Layout(material);
+            Table table = null;
+            if (Files.exists(dir.resolve(layout.name + ".dtm"))) {
+                try {
+                    table = new Table(layout, dir);
+                } catch (IOException e) {
+                    table = null;
+                }
+            }
+            // The table is written before its key is published, so a reader that sees the key sees the table.
+            cacheTables[slot] = table;
+            cacheKeys.set(slot, material + 1);
+        }
+        return cacheTables[slot];
+    }
+
+    static boolean covers(Position position) {
+        if (position.castling != 0 || Long.bitCount(position.occupied) > MAX_PIECES) {
+            return false;
+        }
+        int us = position.sideToMove;
+        int ep = position.epSquare;
+        return ep < 0 || (Attacks.pawn(us ^ 1, ep) & position.pieces[us][Position.PAWN]) == 0;
+    }
+
+    // The stored byte for the position (see the file format above), or -1 when no table covers it.
+    int probe(Position position) {
+        if (!covers(position)) {
+            return -1;
+        }
+        if (position.occupied == (position.pieces[Position.WHITE][Position.KING] | position.pieces[Position.BLACK][Position.KING])) {
+            return 0;
+        }
+        int material = material(position);
+        int canonical = canonical(material);
+        Table table = table(canonical);
+        if (table == null) {
+            return -1;
+        }
+        boolean swap = canonical != material;
+        int side = position.sideToMove ^ (swap ? 1 : 0);
+        int code = table.dtm[side].get(table.layout.index(position, swap, SQUARES.get())) & 0xFF;
+        return code == UNREACHABLE ? -1 : code;
+    }
+
+    // WIN, DRAW or LOSS for the side to move, or UNKNOWN; read from the smaller .wdl file when there is one.
+    int wdl(Position position) {
+        if (!covers(position)) {
+            return UNKNOWN;
+        }
+        int material = material(position);
+        int canonical = canonical(material);
+        Table table = pieceCount(material) == 0 ? null : table(canonical);
+        if (table == null || table.wdl[0] == null) {
+            int code = probe(position);
+            return code < 0 ? UNKNOWN : code == 0 ? DRAW : (code & 1) == 0 ? WIN : LOSS;
+        }
+        boolean swap = canonical != material;
+        int side = position.sideToMove ^ (swap ? 1 : 0);
+        int index = table.layout.index(position, swap, SQUARES.get());
+        int value = table.wdl[side].get(index >>> 2) >>> 2 * (index & 3) & 3;
+        return value == 3 ? UNKNOWN : value;
+    }
+
+    // Plies to mate for either side, or -1 for a draw or an uncovered position.
+    int distanceToMate(Position position) {
+        int code = probe(position);
+        return code > 0 ? code - 1 : -1;
+    }
+
+    // The position's value as a search score at the given ply, or NOT_FOUND.
+    int score(Position position, int ply) {
+        int code = probe(position);
+        if (code < 0) {
+            return NOT_FOUND;
+        }
+        if (code == 0) {
+            return 0;
+        }
+        int plies = code - 1;
+        return (plies & 1) != 0 ? Search.MATE - ply - plies : -Search.MATE + ply + plies;
+    }
+
+    // The move keeping the best tablebase value (the fastest mate, or the longest resistance), or Move.NONE.
+    int bestMove(Position position) {
+        if (score(position, 0) == NOT_FOUND) {
+            return Move.NONE;
+        }
+        int[] moves = MOVES.get();
+        int count = MoveGen.generate(position, moves, 0);
+        int best = Move.NONE;
+        int bestScore = -Search.INFINITY;
+        for (int k = 0; k < count; k++) {
+            int move = moves[k];
+            position.makeMove(move);
+            int score = score(position, 1);
+            position.unmakeMove(move);
+            if (score == NOT_FOUND) {
+                return Move.NONE;
+            }
+            if (-score > bestScore) {
+                bestScore = -score;
+                best = move;
+            }
+        }
+        return best;
+    }
+
+    // A short verdict for display, e.g. "White mates in 12", or null when the position is not covered.
+    String describe(Position position) {
+        int code = probe(position);
+        if (code < 0) {
+            return null;
+        }
+        if (code == 0) {
+            return "Draw";
+        }
+        int plies = code - 1;
+        int winner = (plies & 1) != 0 ? position.sideToMove : position.sideToMove ^ 1;
+        String color = Position.COLOR_NAMES[winner];
+        return Character.toUpperCase(color.charAt(0)) + color.substring(1) + " mates in " + (plies + 1) / 2;
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("usage: java Tablebase <dir> <fen>");
+            System.exit(2);
+        }
+        Tablebase tablebase = new Tablebase(Paths.get(args[0]));
+        Position position = new Position();
+        position.setFen(String.join(" ", java.util.Arrays.copyOfRange(args, 1, args.length)));
+        String verdict = tablebase.describe(position);
+        if (verdict == null) {
+            System.out.println("not in tablebases");
+            return;
+        }
+        int best = tablebase.bestMove(position);
+        System.out.println(verdict + (best == Move.NONE ? "" : ", best move " + Move.toUci(best)));
+    }
+}
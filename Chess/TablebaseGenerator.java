@@ -0,0 +1,376 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Builds Tablebase files by retrograde analysis.
+//   java TablebaseGenerator [--threads n] <dir> KQvK KRvK KPvK ...
+// Tables that a capture or promotion leads into are built first when missing. A table is solved pass by pass:
+// pass p finds every position mated or mating in exactly p plies, by un-moving the pieces of the positions
+// decided in pass p - 1 (a predecessor of a loss is a win; a predecessor of a win is re-checked with the
+// legal move generator to see whether all its moves now lose). Captures and promotions are scored from the
+// smaller tables on disk. Each pass is split over a fork-join pool. En-passant rights created by a double
+// push are ignored while solving, as the tables do not cover them.
+// Memory use is four bytes per position of the table, so five-piece tables with pawns want -Xmx3g.
+final class TablebaseGenerator {
+    private static final int CHUNK = 1 << 16;
+    private static final int MAX_DTM = Tablebase.UNREACHABLE - 2;
+
+    private final Path dir;
+    private final ForkJoinPool pool;
+
+    TablebaseGenerator(Path dir, int threads) {
+        this.dir = dir;
+        this.pool = new ForkJoinPool(threads);
+    }
+
+    // Builds the table for a signature, and first every missing table it converts into.
+    void generate(int material) throws IOException {
+        material = Tablebase.canonical(material);
+        if (Tablebase.pieceCount(material) == 0) {
+            return;
+        }
+        Tablebase.Layout layout = new Tablebase.Layout(material);
+        if (Files.exists(dir.resolve(layout.name + ".dtm"))) {
+            return;
+        }
+        for (int target : conversions(material)) {
+            generate(target);
+        }
+        long start = System.nanoTime();
+        Solver solver = new Solver(layout, new Tablebase(dir));
+        int passes = solver.solve();
+        solver.write();
+        System.out.printf("%s: %d positions per side, longest mate %d plies, %.2f s%n",
+                layout.name, layout.size, passes - 1, (System.nanoTime() - start) / 1e9);
+    }
+
+    // Materials reachable by one capture, promotion or capturing promotion.
+    static Set<Integer> conversions(int material) {
+        Set<Integer> targets = new LinkedHashSet<>();
+        for (int color = Position.WHITE; color <= Position.BLACK; color++) {
+            List<Integer> afterCapture = new ArrayList<>();
+            afterCapture.add(material);
+            for (int type = Position.PAWN; type <= Position.QUEEN; type++) {
+                if (Tablebase.count(material, color ^ 1, type) > 0) {
+                    int captured = material - (1 << 2 * ((color ^ 1) * 5 + type));
+                    targets.add(captured);
+                    afterCapture.add(captured);
+                }
+            }
+            if (Tablebase.count(material, color, Position.PAWN) > 0) {
+                for (int base : afterCapture) {
+                    for (int type = Position.KNIGHT; type <= Position.QUEEN; type++) {
+                        if (Tablebase.count(base, color, type) < 3) {
+                            targets.add(base - (1 << 2 * (color * 5 + Position.PAWN)) + (1 << 2 * (color * 5 + type)));
+                        }
+                    }
+                }
+            }
+        }
+        return targets;
+    }
+
+    // Solving state for one table: the stored byte per position and side, plus a byte per position for a
+    // result already known to arrive in a later pass (a conversion that mates, or a loss whose slowest line
+    // is longer than the pass that completed it).
+    private final class Solver {
+        private final Tablebase.Layout layout;
+        private final Tablebase smaller;
+        private final byte[][] values;
+        private final byte[][] pending;
+        private final AtomicInteger lastPending = new AtomicInteger();
+
+        Solver(Tablebase.Layout layout, Tablebase smaller) {
+            this.layout = layout;
+            this.smaller = smaller;
+            this.values = new byte[2][layout.size];
+            this.pending = new byte[2][layout.size];
+        }
+
+        // Returns the number of passes, one more than the longest mate.
+        int solve() {
+            forEachChunk((side, from, to) -> {
+                Worker worker = new Worker();
+                for (int index = from; index < to; index++) {
+                    worker.initialize(side, index);
+                }
+            });
+            int pass = 1;
+            while (true) {
+                if (pass > MAX_DTM) {
+                    throw new IllegalStateException(layout.name + ": mate longer than " + MAX_DTM + " plies");
+                }
+                AtomicBoolean changed = new AtomicBoolean();
+                int current = pass;
+                forEachChunk((side, from, to) -> {
+                    Worker worker = new Worker();
+                    byte decided = (byte) current;
+                    for (int index = from; index < to; index++) {
+                        if (values[side][index] == decided && worker.retract(side, index, current)) {
+                            changed.set(true);
+                        }
+                    }
+                });
+                forEachChunk((side, from, to) -> {
+                    byte due = (byte) (current + 1);
+                    for (int index = from; index < to; index++) {
+                        if (pending[side][index] == due && values[side][index] == 0) {
+                            values[side][index] = due;
+                            changed.set(true);
+                        }
+                    }
+                });
+                if (!changed.get() && pass >= lastPending.get()) {
+                    return pass;
+                }
+                pass++;
+            }
+        }
+
+        void write() throws IOException {
+            Files.createDirectories(dir);
+            Path dtm = dir.resolve(layout.name + ".dtm");
+            Path wdl = dir.resolve(layout.name + ".wdl");
+            Path dtmTemp = dir.resolve(layout.name + ".dtm.tmp");
+            try (FileChannel out = FileChannel.open(dtmTemp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (int side = 0; side < 2; side++) {
+                    ByteBuffer buf = ByteBuffer.wrap(values[side]);
+                    while (buf.hasRemaining()) {
+                        out.write(buf);
+                    }
+                }
+            }
+            try (FileChannel out = FileChannel.open(wdl, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (int side = 0; side < 2; side++) {
+                    byte[] packed = new byte[layout.size / 4];
+                    for (int index = 0; index < layout.size; index++) {
+                        int code = values[side][index] & 0xFF;
+                        int value = code == Tablebase.UNREACHABLE ? 3
+                                : code == 0 ? Tablebase.DRAW
+                                : (code & 1) == 0 ? Tablebase.WIN : Tablebase.LOSS;
+                        packed[index >>> 2] |= (byte) (value << 2 * (index & 3));
+                    }
+                    ByteBuffer buf = ByteBuffer.wrap(packed);
+                    while (buf.hasRemaining()) {
+                        out.write(buf);
+                    }
+                }
+            }
+            // The .dtm file marks a finished table, so it appears last.
+            Files.move(dtmTemp, dtm, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        private void forEachChunk(ChunkTask task) {
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for (int side = 0; side < 2; side++) {
+                for (int from = 0; from < layout.size; from += CHUNK) {
+                    int s = side;
+                    int f = from;
+                    int t = Math.min(layout.size, from + CHUNK);
+                    tasks.add(pool.submit(() -> task.run(s, f, t)));
+                }
+            }
+            for (ForkJoinTask<?> submitted : tasks) {
+                submitted.join();
+            }
+        }
+
+        // Per-task scratch state, so the workers share nothing but the value arrays.
+        private final class Worker {
+            private final Position position = new Position();
+            private final int[] squares = new int[Tablebase.MAX_PIECES];
+            private final int[] moved = new int[Tablebase.MAX_PIECES];
+            private final int[] childSquares = new int[Tablebase.MAX_PIECES];
+            private final int[] moves = new int[MoveGen.MAX_MOVES];
+
+            // Marks unreachable placements, mates and stalemates, and records what conversions promise.
+            void initialize(int side, int index) {
+                if (!layout.decode(index, squares)) {
+                    values[side][index] = (byte) Tablebase.UNREACHABLE;
+                    return;
+                }
+                layout.setUp(position, squares, side);
+                if (position.inCheck(side ^ 1)) {
+                    values[side][index] = (byte) Tablebase.UNREACHABLE;
+                    return;
+                }
+                int count = MoveGen.generate(position, moves, 0);
+                if (count == 0) {
+                    values[side][index] = (byte) (position.inCheck(side) ? 1 : 0);
+                    return;
+                }
+                int fastestWin = Integer.MAX_VALUE;
+                int slowestLoss = -1;
+                boolean allConversions = true;
+                boolean allLose = true;
+                for (int k = 0; k < count; k++) {
+                    int move = moves[k];
+                    if (!Move.isCapture(move) && !Move.isPromotion(move)) {
+                        allConversions = false;
+                        continue;
+                    }
+                    position.makeMove(move);
+                    int code = smaller.probe(position);
+                    position.unmakeMove(move);
+                    if (code < 0) {
+                        throw new IllegalStateException(layout.name + ": no table after " + Move.toUci(move));
+                    }
+                    if (code == 0) {
+                        allLose = false;
+                    } else if ((code & 1) != 0) {
+                        fastestWin = Math.min(fastestWin, code);
+                    } else {
+                        slowestLoss = Math.max(slowestLoss, code);
+                    }
+                }
+                // A child's code is its plies + 1, which is exactly our plies to the same mate.
+                if (fastestWin != Integer.MAX_VALUE) {
+                    schedule(side, index, fastestWin);
+                } else if (allConversions && allLose) {
+                    schedule(side, index, slowestLoss);
+                }
+            }
+
+            private void schedule(int side, int index, int plies) {
+                if (plies > MAX_DTM) {
+                    throw new IllegalStateException(layout.name + ": mate longer than " + MAX_DTM + " plies");
+                }
+                pending[side][index] = (byte) (plies + 1);
+                lastPending.accumulateAndGet(plies, Math::max);
+            }
+
+            // Position index (side to move, decided in pass - 1 plies) is un-moved into every predecessor;
+            // returns whether any of them was decided in this pass.
+            boolean retract(int side, int index, int pass) {
+                layout.decode(index, squares);
+                long occupied = 0L;
+                for (int slot = 0; slot < layout.slots(); slot++) {
+                    occupied |= 1L << squares[slot];
+                }
+                int mover = side ^ 1;
+                boolean lost = ((pass - 1) & 1) == 0;
+                boolean changed = false;
+                for (int slot = 0; slot < layout.slots(); slot++) {
+                    if (layout.colors[slot] != mover) {
+                        continue;
+                    }
+                    int sq = squares[slot];
+                    long origins;
+                    if (layout.types[slot] == Position.PAWN) {
+                        origins = pawnOrigins(mover, sq, occupied);
+                    } else {
+                        origins = Position.attacks(layout.types[slot], mover, sq, occupied) & ~occupied;
+                    }
+                    for (; origins != 0; origins &= origins - 1) {
+                        System.arraycopy(squares, 0, moved, 0, layout.slots());
+                        moved[slot] = Long.numberOfTrailingZeros(origins);
+                        int predecessor = layout.index(moved);
+                        if (values[mover][predecessor] != 0) {
+                            continue;
+                        }
+                        if (lost) {
+                            values[mover][predecessor] = (byte) (pass + 1);
+                            changed = true;
+                        } else if (verifyLoss(mover, predecessor, pass)) {
+                            changed = true;
+                        }
+                    }
+                }
+                return changed;
+            }
+
+            private long pawnOrigins(int color, int sq, long occupied) {
+                int back = color == Position.WHITE ? -8 : 8;
+                int from = sq + back;
+                if (from < 8 || from >= 56 || (occupied & 1L << from) != 0) {
+                    return 0L;
+                }
+                long origins = 1L << from;
+                int rank = sq >>> 3;
+                if ((color == Position.WHITE && rank == 3) || (color == Position.BLACK && rank == 4)) {
+                    int start = from + back;
+                    if ((occupied & 1L << start) == 0) {
+                        origins |= 1L << start;
+                    }
+                }
+                return origins;
+            }
+
+            // The predecessor loses once every move leads to a decided win for the opponent; decided here means
+            // before this pass, so the outcome does not depend on which thread got where first.
+            private boolean verifyLoss(int side, int index, int pass) {
+                layout.decode(index, childSquares);
+                layout.setUp(position, childSquares, side);
+                int count = MoveGen.generate(position, moves, 0);
+                int slowest = -1;
+                for (int k = 0; k < count; k++) {
+                    int move = moves[k];
+                    position.makeMove(move);
+                    int code;
+                    if (Move.isCapture(move) || Move.isPromotion(move)) {
+                        code = smaller.probe(position);
+                    } else {
+                        code = values[side ^ 1][layout.index(position, false, childSquares)] & 0xFF;
+                        if (code > pass) {
+                            code = 0;
+                        }
+                    }
+                    position.unmakeMove(move);
+                    if (code <= 0 || (code & 1) != 0) {
+                        return false;
+                    }
+                    slowest = Math.max(slowest, code);
+                }
+                if (slowest == pass) {
+                    values[side][index] = (byte) (pass + 1);
+                    return true;
+                }
+                schedule(side, index, slowest);
+                return false;
+            }
+        }
+    }
+
+    private interface ChunkTask {
+        void run(int side, int from, int to);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<String> names = new ArrayList<>();
+        Path dir = null;
+        for (int k = 0; k < args.length; k++) {
+            if (args[k].equals("--threads")) {
+                threads = Integer.parseInt(args[++k]);
+            } else if (dir == null) {
+                dir = Paths.get(args[k]);
+            } else {
+                names.add(args[k]);
+            }
+        }
+        if (dir == null || names.isEmpty()) {
+            System.err.println("usage: java TablebaseGenerator [--threads n] <dir> KQvK KRvK ...");
+            System.exit(2);
+        }
+        Files.createDirectories(dir);
+        TablebaseGenerator generator = new TablebaseGenerator(dir, threads);
+        for (String name : names) {
+            generator.generate(Tablebase.parse(name));
+        }
+        generator.pool.shutdown();
+    }
+}
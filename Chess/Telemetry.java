@@ -0,0 +1,306 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.ObjectName;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+// Where the time goes: Flight Recorder events for rule checks, board rendering, search iterations and engine
+// moves, which cost nothing beyond a disabled-event check until a recording is started (JMC or
+// -XX:StartFlightRecording), and always-on counters exported as the MXBean chess:type=Metrics.
+// The counters are LongAdders bumped once per call, cheap enough to leave on; -Dchess.telemetry=false
+// turns them off entirely.
+final class Telemetry {
+    static final boolean ENABLED = !"false".equals(System.getProperty("chess.telemetry"));
+    static final String OBJECT_NAME = "chess:type=Metrics";
+
+    static final int VALID_MOVE = 0;
+    static final int KING_IN_CHECK = 1;
+    static final int KING_SAFETY = 2;
+    static final String[] RULE_NAMES = {"isValidMove", "isKingInCheck", "canKingMoveToSafety"};
+
+    private static final LongAdder[] ruleChecks = {new LongAdder(), new LongAdder(), new LongAdder()};
+    private static final LongAdder renders = new LongAdder();
+    private static final LongAdder renderNanos = new LongAdder();
+    private static final LongAdder renderedSquares = new LongAdder();
+    private static final LongAdder iterations = new LongAdder();
+    private static final LongAdder engineMoves = new LongAdder();
+    private static final LongAdder nodes = new LongAdder();
+    private static final LongAdder searchNanos = new LongAdder();
+    private static final LongAdder tableProbes = new LongAdder();
+    private static final LongAdder tableHits = new LongAdder();
+    private static final Histogram engineMoveMillis = new Histogram();
+    private static final Histogram serverMoveMicros = new Histogram();
+
+    static {
+        if (ENABLED) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new Metrics(), new ObjectName(OBJECT_NAME));
+            } catch (Exception | LinkageError e) {
+                // Another class loader got there first, or there is no JMX here; the counters still work.
+            }
+        }
+    }
+
+    private Telemetry() {
+    }
+
+    static void ruleChecked(int rule) {
+        if (ENABLED) {
+            ruleChecks[rule].increment();
+        }
+    }
+
+    static void rendered(long nanos, int squares) {
+        if (ENABLED) {
+            renders.increment();
+            renderNanos.add(nanos);
+            renderedSquares.add(squares);
+        }
+    }
+
+    static void iterationFinished() {
+        if (ENABLED) {
+            iterations.increment();
+        }
+    }
+
+    // One engine answer: nodes over all threads, wall time, and the table traffic it caused.
+    static void engineMoved(long searchedNodes, long nanos, long probes, long hits) {
+        if (ENABLED) {
+            engineMoves.increment();
+            nodes.add(searchedNodes);
+            searchNanos.add(nanos);
+            tableProbes.add(probes);
+            tableHits.add(hits);
+            engineMoveMillis.record(nanos / 1000000);
+        }
+    }
+
+    static void serverMoved(long nanos) {
+        if (ENABLED) {
+            serverMoveMicros.record(nanos / 1000);
+        }
+    }
+
+    // Counts in power-of-two buckets: bucket 0 holds 0, bucket k holds [2^(k-1), 2^k).
+    static final class Histogram {
+        static final int BUCKETS = 40;
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+        void record(long value) {
+            counts.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(Math.max(0, value))));
+        }
+
+        long[] counts() {
+            long[] snapshot = new long[BUCKETS];
+            for (int k = 0; k < BUCKETS; k++) {
+                snapshot[k] = counts.get(k);
+            }
+            return snapshot;
+        }
+
+        // Upper bound of the bucket holding the given fraction of the samples, or 0 with no samples.
+        long percentile(double fraction) {
+            long[] snapshot = counts();
+            long total = 0;
+            for (long count : snapshot) {
+                total += count;
+            }
+            long seen = 0;
+            for (int k = 0; k < BUCKETS; k++) {
+                seen += snapshot[k];
+                if (seen > 0 && seen >= fraction * total) {
+                    return k == 0 ? 0 : 1L << k;
+                }
+            }
+            return 0;
+        }
+
+        void reset() {
+            for (int k = 0; k < BUCKETS; k++) {
+                counts.set(k, 0);
+            }
+        }
+    }
+
+    static final class Metrics implements ChessMetricsMXBean {
+        public long getNodes() {
+            return nodes.sum();
+        }
+
+        public long getNodesPerSecond() {
+            long nanos = searchNanos.sum();
+            return nanos == 0 ? 0 : (long) (nodes.sum() * 1e9 / nanos);
+        }
+
+        public long getEngineMoves() {
+            return engineMoves.sum();
+        }
+
+        public long getSearchIterations() {
+            return iterations.sum();
+        }
+
+        public long getTableProbes() {
+            return tableProbes.sum();
+        }
+
+        public long getTableHits() {
+            return tableHits.sum();
+        }
+
+        public double getTableHitRate() {
+            long probes = tableProbes.sum();
+            return probes == 0 ? 0.0 : (double) tableHits.sum() / probes;
+        }
+
+        public long[] getEngineMoveMillisHistogram() {
+            return engineMoveMillis.counts();
+        }
+
+        public long getEngineMoveMillisP50() {
+            return engineMoveMillis.percentile(0.5);
+        }
+
+        public long getEngineMoveMillisP99() {
+            return engineMoveMillis.percentile(0.99);
+        }
+
+        public long[] getServerMoveMicrosHistogram() {
+            return serverMoveMicros.counts();
+        }
+
+        public long getServerMoveMicrosP50() {
+            return serverMoveMicros.percentile(0.5);
+        }
+
+        public long getServerMoveMicrosP99() {
+            return serverMoveMicros.percentile(0.99);
+        }
+
+        public long getValidMoveChecks() {
+            return ruleChecks[VALID_MOVE].sum();
+        }
+
+        public long getKingInCheckChecks() {
+            return ruleChecks[KING_IN_CHECK].sum();
+        }
+
+        public long getKingSafetyChecks() {
+            return ruleChecks[KING_SAFETY].sum();
+        }
+
+        public long getBoardRenders() {
+            return renders.sum();
+        }
+
+        public double getMeanRenderMicros() {
+            long count = renders.sum();
+            return count == 0 ? 0.0 : renderNanos.sum() / 1e3 / count;
+        }
+
+        public double getMeanSquaresPerRender() {
+            long count = renders.sum();
+            return count == 0 ? 0.0 : (double) renderedSquares.sum() / count;
+        }
+
+        public void reset() {
+            for (LongAdder adder : ruleChecks) {
+                adder.reset();
+            }
+            for (LongAdder adder : new LongAdder[] {renders, renderNanos, renderedSquares, iterations, engineMoves,
+                    nodes, searchNanos, tableProbes, tableHits}) {
+                adder.reset();
+            }
+            engineMoveMillis.reset();
+            serverMoveMicros.reset();
+        }
+    }
+
+    @Name("chess.RuleCheck")
+    @Label("Rule Check")
+    @Category("Chess")
+    @Description("A move-rule or check query from the board")
+    static final class RuleCheckEvent extends Event {
+        @Label("Check")
+        String check;
+
+        @Label("Square")
+        String square;
+
+        @Label("Result")
+        boolean result;
+    }
+
+    @Name("chess.BoardRender")
+    @Label("Board Render")
+    @Category("Chess")
+    @Description("Bringing the board on screen up to date with the position")
+    static final class RenderEvent extends Event {
+        @Label("Board")
+        String board;
+
+        @Label("Squares Updated")
+        int squares;
+    }
+
+    @Name("chess.SearchIteration")
+    @Label("Search Iteration")
+    @Category("Chess")
+    @Description("One completed iteration of iterative deepening")
+    static final class SearchIterationEvent extends Event {
+        @Label("Thread Index")
+        int thread;
+
+        @Label("Depth")
+        int depth;
+
+        @Label("Score")
+        int score;
+
+        @Label("Nodes")
+        long nodes;
+
+        @Label("Best Move")
+        String bestMove;
+    }
+
+    @Name("chess.EngineMove")
+    @Label("Engine Move")
+    @Category("Chess")
+    @Description("One engine answer: book, tablebase or search")
+    static final class EngineMoveEvent extends Event {
+        @Label("Source")
+        String source;
+
+        @Label("Move")
+        String move;
+
+        @Label("Depth")
+        int depth;
+
+        @Label("Score")
+        int score;
+
+        @Label("Nodes")
+        long nodes;
+
+        @Label("Nodes Per Second")
+        long nps;
+
+        @Label("Table Hits")
+        long tableHits;
+
+        @Label("Table Probes")
+        long tableProbes;
+
+        @Label("Search Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long searchNanos;
+    }
+}
@@ -0,0 +1,431 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Self-play match between two engine configurations, for accepting or rejecting an engine change.
+//   java Tournament [--games n] [--threads n] [--openings file] [--pgn out.pgn] [--a spec] [--b spec]
+//                   [--sprt elo0 elo1] [--alpha a] [--beta b] [--maxplies n]
+// A spec is a comma-separated list of nodes=, depth=, movetime= (ms), hash= (MB), network=<file>|none and
+// name=, e.g. "nodes=20000,network=new.nnue". Games run on all cores, one per worker thread, each side with
+// its own table. Every opening (built in, or one FEN/EPD per line of the file) is played twice with colours
+// swapped. Games end by the rules of Game (mate, stalemate, repetition, fifty moves) or are adjudicated drawn
+// on insufficient material or after maxplies. Finished games are appended to the PGN file as they come in.
+// The sequential probability ratio test weighs "B is elo1 stronger than A" against "B is elo0 stronger" and
+// stops the match once either is accepted at the given error rates.
+final class Tournament {
+    private static final String[] OPENINGS = {
+        "e2e4 e7e5 g1f3 b8c6 f1b5 a7a6",
+        "e2e4 e7e5 g1f3 b8c6 f1c4 f8c5",
+        "e2e4 c7c5 g1f3 d7d6 d2d4 c5d4 f3d4 g8f6",
+        "e2e4 c7c5 b1c3 b8c6 g2g3",
+        "e2e4 e7e6 d2d4 d7d5 b1c3 g8f6",
+        "e2e4 c7c6 d2d4 d7d5 e4e5 c8f5",
+        "e2e4 d7d6 d2d4 g8f6 b1c3 g7g6",
+        "d2d4 d7d5 c2c4 e7e6 b1c3 g8f6",
+        "d2d4 d7d5 c2c4 c7c6 g1f3 g8f6",
+        "d2d4 g8f6 c2c4 g7g6 b1c3 f8g7 e2e4 d7d6",
+        "d2d4 g8f6 c2c4 e7e6 b1c3 f8b4",
+        "d2d4 g8f6 c2c4 c7c5 d4d5 e7e6",
+        "c2c4 e7e5 b1c3 g8f6 g2g3",
+        "c2c4 c7c5 g1f3 g8f6 b1c3 b8c6",
+        "g1f3 d7d5 g2g3 g8f6 f1g2 e7e6",
+        "e2e4 e7e5 f2f4 e5f4 g1f3 g7g5",
+    };
+
+    private static final int WIN = 0;
+    private static final int DRAW = 1;
+    private static final int LOSS = 2;
+
+    // One side of the match.
+    static final class Player {
+        final String name;
+        final Search.Limits limits;
+        final int hashMb;
+        final Network network;
+
+        Player(String name, Search.Limits limits, int hashMb, Network network) {
+            this.name = name;
+            this.limits = limits;
+            this.hashMb = hashMb;
+            this.network = network;
+        }
+
+        static Player parse(String defaultName, String spec) throws IOException {
+            String name = defaultName;
+            int depth = Search.MAX_PLY - 1;
+            long millis = 0;
+            long nodes = 0;
+            int hashMb = 8;
+            Network network = Network.shared();
+            for (String option : spec.split(",")) {
+                int eq = option.indexOf('=');
+                if (eq < 0) {
+                    throw new IllegalArgumentException("expected key=value: " + option);
+                }
+                String value = option.substring(eq + 1);
+                switch (option.substring(0, eq)) {
+                    case "name": name = value; break;
+                    case "depth": depth = Integer.parseInt(value); break;
+                    case "movetime": millis = Long.parseLong(value); break;
+                    case "nodes": nodes = Long.parseLong(value); break;
+                    case "hash": hashMb = Integer.parseInt(value); break;
+                    case "network": network = value.equals("none") ? null : Network.load(Paths.get(value)); break;
+                    default: throw new IllegalArgumentException("unknown option: " + option);
+                }
+            }
+            if (depth == Search.MAX_PLY - 1 && millis == 0 && nodes == 0) {
+                nodes = 20000;
+            }
+            return new Player(name, new Search.Limits(depth, millis, nodes), hashMb, network);
+        }
+    }
+
+    // A starting position and the moves played from it before the engines take over.
+    static final class Opening {
+        final String fen;
+        final String[] moves;
+
+        Opening(String fen, String[] moves) {
+            this.fen = fen;
+            this.moves = moves;
+        }
+    }
+
+    private final Player a;
+    private final Player b;
+    private final Opening[] openings;
+    private final int games;
+    private final int maxPlies;
+    private final double elo0;
+    private final double elo1;
+    private final double lowerBound;
+    private final double upperBound;
+    private final Writer pgn;
+    private final AtomicInteger nextGame = new AtomicInteger();
+    private final long start = System.nanoTime();
+    private volatile boolean stopped;
+
+    // Results from A's point of view; guarded by this.
+    private final int[] counts = new int[3];
+    private int finished;
+    private String verdict;
+
+    Tournament(Player a, Player b, Opening[] openings, int games, int maxPlies, double elo0, double elo1,
+               double alpha, double beta, Writer pgn) {
+        this.a = a;
+        this.b = b;
+        this.openings = openings;
+        this.games = games;
+        this.maxPlies = maxPlies;
+        this.elo0 = elo0;
+        this.elo1 = elo1;
+        this.lowerBound = Math.log(beta / (1 - alpha));
+        this.upperBound = Math.log((1 - beta) / alpha);
+        this.pgn = pgn;
+    }
+
+    private void worker() {
+        TranspositionTable[] tables = {new TranspositionTable(a.hashMb), new TranspositionTable(b.hashMb)};
+        Position[] views = {new Position(), new Position()};
+        Game game = new Game();
+        int[] moves = new int[MoveGen.MAX_MOVES];
+        StringBuilder movetext = new StringBuilder(2048);
+        int round;
+        while (!stopped && (round = nextGame.getAndIncrement()) < games) {
+            Opening opening = openings[(round / 2) % openings.length];
+            // A has White in even rounds and Black in odd ones, so each opening is seen from both sides.
+            Player white = round % 2 == 0 ? a : b;
+            Player black = round % 2 == 0 ? b : a;
+            Player[] players = {white, black};
+            TranspositionTable[] sideTables = round % 2 == 0 ? tables : new TranspositionTable[] {tables[1], tables[0]};
+            game.reset(opening.fen);
+            for (int side = Position.WHITE; side <= Position.BLACK; side++) {
+                views[side].setFen(opening.fen);
+                views[side].setNetwork(players[side].network);
+                sideTables[side].clear();
+            }
+
+            movetext.setLength(0);
+            int plies = 0;
+            String result = null;
+            String reason = null;
+            for (String uci : opening.moves) {
+                int move = MoveGen.parseUci(game.position(), uci);
+                if (move == Move.NONE) {
+                    break;
+                }
+                appendMove(movetext, game.position(), move, moves);
+                play(game, views, move);
+                plies++;
+            }
+            while (result == null) {
+                Position position = game.position();
+                if (game.status() == Game.CHECKMATE) {
+                    result = position.sideToMove == Position.WHITE ? "0-1" : "1-0";
+                    reason = (position.sideToMove == Position.WHITE ? "Black" : "White") + " mates";
+                } else if (game.status() != Game.PLAYING) {
+                    result = "1/2-1/2";
+                    reason = game.status() == Game.STALEMATE ? "stalemate"
+                            : game.status() == Game.REPETITION ? "3-fold repetition" : "50-move rule";
+                } else if (insufficientMaterial(position)) {
+                    result = "1/2-1/2";
+                    reason = "insufficient material";
+                } else if (plies >= maxPlies) {
+                    result = "1/2-1/2";
+                    reason = "adjudicated after " + maxPlies + " plies";
+                } else {
+                    int side = position.sideToMove;
+                    int move = new Search(views[side], sideTables[side], 0).run(players[side].limits).bestMove;
+                    appendMove(movetext, position, move, moves);
+                    play(game, views, move);
+                    plies++;
+                }
+            }
+            int outcome = result.equals("1/2-1/2") ? DRAW : result.equals("1-0") == (white == a) ? WIN : LOSS;
+            finished(round, white, black, opening.fen, movetext, plies, result, reason, outcome);
+        }
+    }
+
+    private static void play(Game game, Position[] views, int move) {
+        game.playMove(move);
+        views[Position.WHITE].makeMove(move);
+        views[Position.BLACK].makeMove(move);
+    }
+
+    private static void appendMove(StringBuilder movetext, Position position, int move, int[] moves) {
+        if (movetext.length() > 0) {
+            movetext.append(' ');
+        }
+        if (position.sideToMove == Position.WHITE) {
+            movetext.append(position.fullmoveNumber).append(". ");
+        } else if (movetext.length() == 0) {
+            movetext.append(position.fullmoveNumber).append("... ");
+        }
+        movetext.append(San.format(position, move, moves));
+    }
+
+    // Neither side can mate: bare kings, or a single knight or bishop against a bare king.
+    static boolean insufficientMaterial(Position position) {
+        for (int color = Position.WHITE; color <= Position.BLACK; color++) {
+            long[] pieces = position.pieces[color];
+            if ((pieces[Position.PAWN] | pieces[Position.ROOK] | pieces[Position.QUEEN]) != 0) {
+                return false;
+            }
+        }
+        return Long.bitCount(position.occupied) <= 3;
+    }
+
+    private synchronized void finished(int round, Player white, Player black, String fen, StringBuilder movetext,
+                                       int plies, String result, String reason, int outcome) {
+        counts[outcome]++;
+        finished++;
+        try {
+            writeGame(round, white, black, fen, movetext, plies, result, reason);
+        } catch (IOException e) {
+            System.err.println("cannot write PGN: " + e.getMessage());
+            stopped = true;
+        }
+        double llr = llr();
+        if (verdict == null && elo1 > elo0 && (llr >= upperBound || llr <= lowerBound)) {
+            verdict = llr >= upperBound ? "H1 accepted" : "H0 accepted";
+            stopped = true;
+        }
+        if (finished % 10 == 0 || stopped || finished == games) {
+            System.err.println(progress());
+        }
+    }
+
+    private void writeGame(int round, Player white, Player black, String fen, StringBuilder movetext, int plies,
+                           String result, String reason) throws IOException {
+        if (pgn == null) {
+            return;
+        }
+        StringBuilder out = new StringBuilder(movetext.length() + 512);
+        out.append("[Event \"").append(a.name).append(" vs ").append(b.name).append("\"]\n");
+        out.append("[Site \"Tournament\"]\n");
+        out.append("[Date \"").append(LocalDate.now().format(DateTimeFormatter.ofPattern("yyyy.MM.dd"))).append("\"]\n");
+        out.append("[Round \"").append(round + 1).append("\"]\n");
+        out.append("[White \"").append(white.name).append("\"]\n");
+        out.append("[Black \"").append(black.name).append("\"]\n");
+        out.append("[Result \"").append(result).append("\"]\n");
+        if (!fen.equals(Position.START_FEN)) {
+            out.append("[SetUp \"1\"]\n");
+            out.append("[FEN \"").append(fen).append("\"]\n");
+        }
+        out.append("[PlyCount \"").append(plies).append("\"]\n");
+        out.append("[Termination \"").append(reason.startsWith("adjudicated") || reason.startsWith("insufficient")
+                ? "adjudication" : "normal").append("\"]\n\n");
+        // Movetext wrapped at 80 columns, as export format asks.
+        String tail = movetext + (movetext.length() > 0 ? " " : "") + "{" + reason + "} " + result;
+        int column = 0;
+        int k = 0;
+        while (k < tail.length()) {
+            int end = tail.indexOf(' ', k);
+            if (tail.charAt(k) == '{') {
+                end = tail.indexOf('}', k) + 1;
+            }
+            if (end < 0) {
+                end = tail.length();
+            }
+            int length = end - k;
+            if (column > 0 && column + 1 + length > 80) {
+                out.append('\n');
+                column = 0;
+            } else if (column > 0) {
+                out.append(' ');
+                column++;
+            }
+            out.append(tail, k, end);
+            column += length;
+            k = end + 1;
+        }
+        out.append("\n\n");
+        pgn.write(out.toString());
+        pgn.flush();
+    }
+
+    // Log-likelihood ratio of elo1 against elo0 under the normal approximation of the trinomial
+    // (win/draw/loss) model, from B's point of view; 0 until the scores vary.
+    private double llr() {
+        int n = counts[WIN] + counts[DRAW] + counts[LOSS];
+        if (n == 0) {
+            return 0;
+        }
+        double score = (counts[LOSS] + 0.5 * counts[DRAW]) / n;
+        double variance = (counts[LOSS] * sq(1 - score) + counts[DRAW] * sq(0.5 - score) + counts[WIN] * sq(score)) / n;
+        if (variance == 0) {
+            return 0;
+        }
+        double s0 = expectedScore(elo0);
+        double s1 = expectedScore(elo1);
+        return n * (s1 - s0) * (2 * score - s0 - s1) / (2 * variance);
+    }
+
+    private String progress() {
+        int n = counts[WIN] + counts[DRAW] + counts[LOSS];
+        double minutes = (System.nanoTime() - start) / 60e9;
+        // B's score, so a positive Elo means B is stronger.
+        double score = (counts[LOSS] + 0.5 * counts[DRAW]) / n;
+        double variance = (counts[LOSS] * sq(1 - score) + counts[DRAW] * sq(0.5 - score) + counts[WIN] * sq(score)) / n;
+        double margin = 1.96 * Math.sqrt(variance / n);
+        double elo = elo(score);
+        double error = (elo(Math.min(score + margin, 1)) - elo(Math.max(score - margin, 0))) / 2;
+        StringBuilder line = new StringBuilder();
+        line.append(String.format(Locale.ROOT, "%d/%d games, %s: +%d =%d -%d, Elo %+.1f +/- %.1f", n, games, b.name,
+                counts[LOSS], counts[DRAW], counts[WIN], elo, error));
+        if (elo1 > elo0) {
+            line.append(String.format(Locale.ROOT, ", LLR %.2f [%.2f, %.2f]", llr(), lowerBound, upperBound));
+        }
+        line.append(String.format(Locale.ROOT, ", %.1f games/min", n / minutes));
+        if (verdict != null) {
+            line.append(", ").append(verdict);
+        }
+        return line.toString();
+    }
+
+    private static double expectedScore(double elo) {
+        return 1 / (1 + Math.pow(10, -elo / 400));
+    }
+
+    private static double elo(double score) {
+        double clamped = Math.min(Math.max(score, 1e-4), 1 - 1e-4);
+        return -400 * Math.log10(1 / clamped - 1);
+    }
+
+    private static double sq(double x) {
+        return x * x;
+    }
+
+    static Opening[] builtInOpenings() {
+        Opening[] openings = new Opening[OPENINGS.length];
+        for (int k = 0; k < OPENINGS.length; k++) {
+            openings[k] = new Opening(Position.START_FEN, OPENINGS[k].split(" "));
+        }
+        return openings;
+    }
+
+    // One position per line as FEN or EPD (opcodes after the fourth field are dropped); # starts a comment.
+    static Opening[] readOpenings(String file) throws IOException {
+        List<Opening> openings = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get(file), StandardCharsets.US_ASCII)) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("\\s+");
+            if (fields.length < 4) {
+                throw new IOException("not a FEN or EPD line: " + line);
+            }
+            String fen = String.join(" ", fields[0], fields[1], fields[2], fields[3]);
+            if (fields.length >= 6 && fields[4].matches("\\d+") && fields[5].matches("\\d+")) {
+                fen += " " + fields[4] + " " + fields[5];
+            }
+            openings.add(new Opening(fen, new String[0]));
+        }
+        if (openings.isEmpty()) {
+            throw new IOException("no positions in " + file);
+        }
+        return openings.toArray(new Opening[0]);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int games = 1000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String openingsFile = null;
+        String pgnFile = null;
+        String specA = "nodes=20000";
+        String specB = "nodes=20000";
+        double elo0 = 0;
+        double elo1 = 0;
+        double alpha = 0.05;
+        double beta = 0.05;
+        int maxPlies = 400;
+        for (int k = 0; k < args.length; k++) {
+            switch (args[k]) {
+                case "--games": games = Integer.parseInt(args[++k]); break;
+                case "--threads": threads = Integer.parseInt(args[++k]); break;
+                case "--openings": openingsFile = args[++k]; break;
+                case "--pgn": pgnFile = args[++k]; break;
+                case "--a": specA = args[++k]; break;
+                case "--b": specB = args[++k]; break;
+                case "--sprt": elo0 = Double.parseDouble(args[++k]); elo1 = Double.parseDouble(args[++k]); break;
+                case "--alpha": alpha = Double.parseDouble(args[++k]); break;
+                case "--beta": beta = Double.parseDouble(args[++k]); break;
+                case "--maxplies": maxPlies = Integer.parseInt(args[++k]); break;
+                default:
+                    System.err.println("usage: java Tournament [--games n] [--threads n] [--openings file] [--pgn out.pgn]"
+                            + " [--a spec] [--b spec] [--sprt elo0 elo1] [--alpha a] [--beta b] [--maxplies n]");
+                    System.exit(2);
+            }
+        }
+
+        Player a = Player.parse("A", specA);
+        Player b = Player.parse("B", specB);
+        Opening[] openings = openingsFile == null ? builtInOpenings() : readOpenings(openingsFile);
+        Writer pgn = pgnFile == null ? null : Files.newBufferedWriter(Paths.get(pgnFile), StandardCharsets.US_ASCII);
+        Tournament tournament = new Tournament(a, b, openings, games, maxPlies, elo0, elo1, alpha, beta, pgn);
+        System.err.printf(Locale.ROOT, "%s (%s) vs %s (%s), %d games on %d threads, %d openings%n", a.name, specA,
+                b.name, specB, games, threads, openings.length);
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (int k = 0; k < threads; k++) {
+            pool.execute(tournament::worker);
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        if (pgn != null) {
+            pgn.close();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+import java.util.concurrent.atomic.LongAdder;
+
+// Fixed-size hash table shared by all search threads without locks. Every entry is two longs,
+// (key ^ data, data): a reader only trusts data whose XOR with the first word gives back its key,
+// so a torn write from another thread just looks like a miss. Buckets hold a depth-preferred slot
+// followed by an always-replace slot.
+final class TranspositionTable {
+    static final int UPPER = 1;
+    static final int LOWER = 2;
+    static final int EXACT = 3;
+
+    private static final int LONGS_PER_BUCKET = 4;
+    private static final int BYTES_PER_BUCKET = LONGS_PER_BUCKET * Long.BYTES;
+    // The most power-of-two buckets one long[] can hold; larger sizes are clamped to it.
+    private static final int MAX_BUCKETS = Integer.highestOneBit(Integer.MAX_VALUE / LONGS_PER_BUCKET);
+    static final int MAX_MEGABYTES = (int) ((long) MAX_BUCKETS * BYTES_PER_BUCKET / (1024 * 1024));
+
+    private long[] table;
+    private int bucketMask;
+    private volatile int generation;
+
+    private final LongAdder probes = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder stores = new LongAdder();
+
+    TranspositionTable(int megabytes) {
+        resize(megabytes);
+    }
+
+    // Rounds the size down to a power-of-two number of buckets so the index is a mask, not a modulo.
+    synchronized void resize(int megabytes) {
+        long buckets = Math.max(1L, (long) Math.max(1, megabytes) * 1024 * 1024 / BYTES_PER_BUCKET);
+        buckets = Math.min(Long.highestOneBit(buckets), MAX_BUCKETS);
+        table = new long[(int) buckets * LONGS_PER_BUCKET];
+        bucketMask = (int) buckets - 1;
+        resetStatistics();
+    }
+
+    void clear() {
+        java.util.Arrays.fill(table, 0L);
+        resetStatistics();
+    }
+
+    int sizeMegabytes() {
+        return (int) ((long) table.length * Long.BYTES / (1024 * 1024));
+    }
+
+    // Called once per search so entries from earlier searches lose their claim on the depth-preferred slot.
+    void newSearch() {
+        generation = (generation + 1) & 0xFF;
+    }
+
+    // Returns the packed data stored for key, or 0 when the position is not in the table.
+    long probe(long key) {
+        long[] t = table;
+        int index = ((int) key & bucketMask) * LONGS_PER_BUCKET;
+        probes.increment();
+        for (int slot = index; slot < index + LONGS_PER_BUCKET; slot += 2) {
+            long data = t[slot + 1];
+            if (data != 0 && (t[slot] ^ data) == key) {
+                hits.increment();
+                return data;
+            }
+        }
+        return 0L;
+    }
+
+    void store(long key, int move, int score, int depth, int bound) {
+        long[] t = table;
+        int index = ((int) key & bucketMask) * LONGS_PER_BUCKET;
+        long data = pack(move, score, depth, bound, generation);
+
+        long preferred = t[index + 1];
+        boolean sameKey = (t[index] ^ preferred) == key;
+        if (preferred == 0 || sameKey || depth >= depth(preferred) || generation(preferred) != generation) {
+            if (sameKey && move == Move.NONE) {
+                data = pack(move(preferred), score, depth, bound, generation);
+            }
+            t[index] = key ^ data;
+            t[index + 1] = data;
+        } else {
+            t[index + 2] = key ^ data;
+            t[index + 3] = data;
+        }
+        stores.increment();
+    }
+
+    static long pack(int move, int score, int depth, int bound, int generation) {
+        return (move & 0xFFFFL)
+                | (score & 0xFFFFL) << 16
+                | (depth & 0xFFL) << 32
+                | (long) bound << 40
+                | (long) generation << 42;
+    }
+
+    static int move(long data) {
+        return (int) (data & 0xFFFF);
+    }
+
+    static int score(long data) {
+        return (short) (data >>> 16);
+    }
+
+    static int depth(long data) {
+        return (int) (data >>> 32 & 0xFF);
+    }
+
+    static int bound(long data) {
+        return (int) (data >>> 40 & 3);
+    }
+
+    static int generation(long data) {
+        return (int) (data >>> 42 & 0xFF);
+    }
+
+    // Permille of a sample of slots written during the current search, as UCI "hashfull" expects.
+    int hashfull() {
+        long[] t = table;
+        int sampled = Math.min(1000, t.length / 2);
+        int used = 0;
+        for (int slot = 0; slot < sampled; slot++) {
+            long data = t[slot * 2 + 1];
+            if (data != 0 && generation(data) == generation) {
+                used++;
+            }
+        }
+        return sampled == 0 ? 0 : used * 1000 / sampled;
+    }
+
+    long probes() {
+        return probes.sum();
+    }
+
+    long hits() {
+        return hits.sum();
+    }
+
+    long stores() {
+        return stores.sum();
+    }
+
+    double hitRate() {
+        long total = probes.sum();
+        return total == 0 ? 0.0 : (double) hits.sum() / total;
+    }
+
+    void resetStatistics() {
+        probes.reset();
+        hits.reset();
+        stores.reset();
+    }
+}
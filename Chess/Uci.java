@@ -0,0 +1,254 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+
+// Universal Chess Interface front end (java Chess --uci). Commands are read on the calling thread while
+// the engine searches on its own threads, so "stop" and "isready" are answered mid-search.
+final class Uci {
+    private static final int MOVE_OVERHEAD_MILLIS = 30;
+
+    private final BufferedReader in;
+    private final PrintWriter out;
+    private final Engine engine = new Engine(Engine.DEFAULT_HASH_MB, 1);
+    private final Position position = new Position();
+
+    private final Object resultLock = new Object();
+    private boolean infinite;
+    private boolean stopRequested;
+    private Search.Result pendingResult;
+
+    Uci(InputStream in, OutputStream out) {
+        this.in = new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII));
+        this.out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.US_ASCII), 1 << 14));
+        position.setFen(Position.START_FEN);
+    }
+
+    void run() throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            String[] tokens = line.trim().split("\\s+");
+            // A bad value or position is reported to the GUI rather than ending the session.
+            try {
+                switch (tokens[0]) {
+                    case "uci":
+                        send("id name Chess");
+                        send("id author Andi-Jash");
+                        send("option name Hash type spin default " + Engine.DEFAULT_HASH_MB + " min 1 max "
+                                + TranspositionTable.MAX_MEGABYTES);
+                        send("option name Threads type spin default 1 min 1 max 1024");
+                        send("option name OwnBook type check default true");
+                        send("option name BookFile type string default <empty>");
+                        send("option name TablebasePath type string default <empty>");
+                        send("option name EvalFile type string default <empty>");
+                        send("uciok");
+                        break;
+                    case "isready":
+                        send("readyok");
+                        break;
+                    case "setoption":
+                        setOption(tokens);
+                        break;
+                    case "ucinewgame":
+                        engine.table().clear();
+                        break;
+                    case "position":
+                        setPosition(tokens);
+                        break;
+                    case "go":
+                        go(tokens);
+                        break;
+                    case "stop":
+                        stop();
+                        break;
+                    case "quit":
+                        engine.shutdown();
+                        return;
+                    default:
+                        break;
+                }
+            } catch (RuntimeException e) {
+                send("info string " + e);
+            }
+        }
+        engine.shutdown();
+    }
+
+    private void setOption(String[] tokens) {
+        String name = valueAfter(tokens, "name");
+        String value = valueAfter(tokens, "value");
+        if (name == null || value == null) {
+            return;
+        }
+        if (name.equalsIgnoreCase("Hash")) {
+            try {
+                engine.table().resize(Integer.parseInt(value));
+            } catch (OutOfMemoryError e) {
+                // The old table is still in place: it is only replaced once the new one exists.
+                send("info string not enough memory for Hash " + value + ", keeping " + engine.table().sizeMegabytes());
+            }
+        } else if (name.equalsIgnoreCase("Threads")) {
+            engine.setThreads(Integer.parseInt(value));
+        } else if (name.equalsIgnoreCase("OwnBook")) {
+            engine.setUseBook(Boolean.parseBoolean(value));
+        } else if (name.equalsIgnoreCase("BookFile")) {
+            try {
+                PolyglotBook.loadShared(value.equals("<empty>") ? null : java.nio.file.Paths.get(value));
+            } catch (IOException e) {
+                send("info string " + e.getMessage());
+            }
+        } else if (name.equalsIgnoreCase("TablebasePath")) {
+            Tablebase.loadShared(value.equals("<empty>") ? null : java.nio.file.Paths.get(value));
+        } else if (name.equalsIgnoreCase("EvalFile")) {
+            try {
+                Network.loadShared(value.equals("<empty>") ? null : java.nio.file.Paths.get(value));
+            } catch (IOException e) {
+                send("info string " + e.getMessage());
+            }
+        }
+    }
+
+    private void setPosition(String[] tokens) {
+        int k = 1;
+        if (tokens.length > 1 && tokens[1].equals("fen")) {
+            StringBuilder fen = new StringBuilder();
+            for (k = 2; k < tokens.length && !tokens[k].equals("moves"); k++) {
+                fen.append(tokens[k]).append(' ');
+            }
+            position.setFen(fen.toString());
+        } else {
+            position.setFen(Position.START_FEN);
+            k = 2;
+        }
+        if (k < tokens.length && tokens[k].equals("moves")) {
+            for (k++; k < tokens.length; k++) {
+                int move = MoveGen.parseUci(position, tokens[k]);
+                if (move == Move.NONE) {
+                    send("info string illegal move " + tokens[k]);
+                    break;
+                }
+                position.makeMove(move);
+            }
+        }
+    }
+
+    private void go(String[] tokens) {
+        int depth = Search.MAX_PLY - 1;
+        long nodes = 0;
+        long moveTime = 0;
+        long time = 0;
+        long increment = 0;
+        int movesToGo = 0;
+        boolean infiniteSearch = false;
+        boolean white = position.sideToMove == Position.WHITE;
+        for (int k = 1; k < tokens.length; k++) {
+            String value = k + 1 < tokens.length ? tokens[k + 1] : "0";
+            switch (tokens[k]) {
+                case "depth": depth = Integer.parseInt(value); k++; break;
+                case "nodes": nodes = Long.parseLong(value); k++; break;
+                case "movetime": moveTime = Long.parseLong(value); k++; break;
+                case "wtime": if (white) { time = Long.parseLong(value); } k++; break;
+                case "btime": if (!white) { time = Long.parseLong(value); } k++; break;
+                case "winc": if (white) { increment = Long.parseLong(value); } k++; break;
+                case "binc": if (!white) { increment = Long.parseLong(value); } k++; break;
+                case "movestogo": movesToGo = Integer.parseInt(value); k++; break;
+                case "infinite": infiniteSearch = true; break;
+                default: break;
+            }
+        }
+
+        long budget = 0;
+        if (moveTime > 0) {
+            budget = Math.max(1, moveTime - MOVE_OVERHEAD_MILLIS);
+        } else if (time > 0) {
+            long share = time / (movesToGo > 0 ? movesToGo + 1 : 30) + increment * 3 / 4;
+            budget = Math.max(1, Math.min(share, time / 2) - MOVE_OVERHEAD_MILLIS);
+        }
+
+        synchronized (resultLock) {
+            infinite = infiniteSearch;
+            stopRequested = false;
+            pendingResult = null;
+        }
+        long start = System.currentTimeMillis();
+        engine.think(position, new Search.Limits(depth, infiniteSearch ? 0 : budget, nodes),
+                (iterationDepth, score, elapsed, pv) -> sendInfo(iterationDepth, score, System.currentTimeMillis() - start, pv),
+                this::finished);
+    }
+
+    private void finished(Search.Result result) {
+        synchronized (resultLock) {
+            // "go infinite" must not answer before the GUI says stop, even if the search ran out of depth.
+            if (infinite && !stopRequested) {
+                pendingResult = result;
+                return;
+            }
+        }
+        sendBestMove(result);
+    }
+
+    private void stop() {
+        Search.Result result;
+        synchronized (resultLock) {
+            stopRequested = true;
+            result = pendingResult;
+            pendingResult = null;
+        }
+        engine.stop();
+        if (result != null) {
+            sendBestMove(result);
+        }
+    }
+
+    private void sendInfo(int depth, int score, long elapsedMillis, int[] pv) {
+        long nodes = engine.nodes();
+        StringBuilder line = new StringBuilder(128);
+        line.append("info depth ").append(depth).append(" score ");
+        if (Math.abs(score) >= Search.MATE_BOUND) {
+            int plies = Search.MATE - Math.abs(score);
+            line.append("mate ").append(score > 0 ? (plies + 1) / 2 : -(plies / 2));
+        } else {
+            line.append("cp ").append(score);
+        }
+        line.append(" nodes ").append(nodes)
+            .append(" nps ").append(nodes * 1000 / Math.max(1, elapsedMillis))
+            .append(" time ").append(elapsedMillis)
+            .append(" hashfull ").append(engine.table().hashfull())
+            .append(" pv");
+        for (int move : pv) {
+            line.append(' ').append(Move.toUci(move));
+        }
+        send(line.toString());
+    }
+
+    private void sendBestMove(Search.Result result) {
+        String best = "bestmove " + Move.toUci(result.bestMove);
+        send(result.pv.length > 1 ? best + " ponder " + Move.toUci(result.pv[1]) : best);
+    }
+
+    // Lines are built whole and flushed one at a time so GUIs never see a partial command.
+    private void send(String line) {
+        synchronized (out) {
+            out.println(line);
+            out.flush();
+        }
+    }
+
+    private static String valueAfter(String[] tokens, String key) {
+        for (int k = 0; k < tokens.length - 1; k++) {
+            if (tokens[k].equals(key)) {
+                StringBuilder value = new StringBuilder(tokens[k + 1]);
+                for (int j = k + 2; j < tokens.length && !tokens[j].equals("value"); j++) {
+                    value.append(' ').append(tokens[j]);
+                }
+                return value.toString();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,34 @@
+// Random keys for incremental position hashing; the seed is fixed so hashes are stable across runs.
+final class Zobrist {
+    static final long[][] PIECE_SQUARE = new long[12][64];
+    static final long[] CASTLING = new long[16];
+    static final long[] EN_PASSANT_FILE = new long[8];
+    static final long SIDE_TO_MOVE;
+
+    static {
+        java.util.SplittableRandom random = new java.util.SplittableRandom(0x5EEDC0FFEEL);
+        for (int piece = 0; piece < 12; piece++) {
+            for (int sq = 0; sq < 64; sq++) {
+                PIECE_SQUARE[piece][sq] = random.nextLong();
+            }
+        }
+        long[] rights = new long[4];
+        for (int right = 0; right < 4; right++) {
+            rights[right] = random.nextLong();
+        }
+        for (int mask = 0; mask < 16; mask++) {
+            for (int right = 0; right < 4; right++) {
+                if ((mask & 1 << right) != 0) {
+                    CASTLING[mask] ^= rights[right];
+                }
+            }
+        }
+        for (int file = 0; file < 8; file++) {
+            EN_PASSANT_FILE[file] = random.nextLong();
+        }
+        SIDE_TO_MOVE = random.nextLong();
+    }
+
+    private Zobrist() {
+    }
+}
@@ -0,0 +1,56 @@
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// Network.Kernel on the incubating Vector API, using the widest vectors the CPU has. It lives apart from the
+// other sources because compiling it needs the incubator module; from Chess/:
+//   javac --add-modules jdk.incubator.vector -cp . -d . simd/NetworkVectorKernel.java
+// and Network picks it up when the JVM also runs with --add-modules jdk.incubator.vector.
+final class NetworkVectorKernel implements Network.Kernel {
+    private static final VectorSpecies<Short> SHORTS = ShortVector.SPECIES_PREFERRED;
+    // Same vector size as SHORTS, so each short vector widens into two of these.
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+
+    public void add(short[] target, short[] weights, int offset, int n) {
+        int k = 0;
+        for (int bound = SHORTS.loopBound(n); k < bound; k += SHORTS.length()) {
+            ShortVector.fromArray(SHORTS, target, k).add(ShortVector.fromArray(SHORTS, weights, offset + k)).intoArray(target, k);
+        }
+        for (; k < n; k++) {
+            target[k] += weights[offset + k];
+        }
+    }
+
+    public void subtract(short[] target, short[] weights, int offset, int n) {
+        int k = 0;
+        for (int bound = SHORTS.loopBound(n); k < bound; k += SHORTS.length()) {
+            ShortVector.fromArray(SHORTS, target, k).sub(ShortVector.fromArray(SHORTS, weights, offset + k)).intoArray(target, k);
+        }
+        for (; k < n; k++) {
+            target[k] -= weights[offset + k];
+        }
+    }
+
+    // Clamped activations times output weights stay within 16 bits (see Network.MAX_OUTPUT_WEIGHT), so the
+    // products are formed in shorts and only widened to ints for the running sum.
+    public int dot(short[] values, short[] weights, int offset, int n) {
+        IntVector sums = IntVector.zero(INTS);
+        int k = 0;
+        for (int bound = SHORTS.loopBound(n); k < bound; k += SHORTS.length()) {
+            ShortVector clipped = ShortVector.fromArray(SHORTS, values, k).max((short) 0).min((short) Network.QA);
+            ShortVector products = clipped.mul(ShortVector.fromArray(SHORTS, weights, offset + k));
+            sums = sums.add(products.convertShape(VectorOperators.S2I, INTS, 0))
+                    .add(products.convertShape(VectorOperators.S2I, INTS, 1));
+        }
+        int sum = sums.reduceLanes(VectorOperators.ADD);
+        for (; k < n; k++) {
+            sum += Math.min(Math.max(values[k], 0), Network.QA) * weights[offset + k];
+        }
+        return sum;
+    }
+
+    public String name() {
+        return "vector " + SHORTS.vectorBitSize() + "-bit";
+    }
+}